@@ -19,6 +19,7 @@ import spacesettlers.objects.Ship;
 import spacesettlers.objects.powerups.SpaceSettlersPowerupEnum;
 import spacesettlers.objects.resources.ResourcePile;
 import spacesettlers.simulator.Toroidal2DPhysics;
+import stan5674.astar.Rendering;
 
 /**
  * Collects nearby asteroids and brings them to the base, picks up beacons as needed for energy.
@@ -47,6 +48,7 @@ public class CatAdamAgent extends TeamClient {
 				} 
 			}
 		} 
+		spaceCommand.setWorld(new WorldSnapshot(space, getTeamName()));
 		Map<UUID, AbstractAction> actions = spaceCommand.getTeamCommands(space);
 		spaceCommand.updateGraphics(space);
 
@@ -76,7 +78,8 @@ public class CatAdamAgent extends TeamClient {
 	 */
 	@Override
 	public void initialize(Toroidal2DPhysics space) {
-		//do nothing
+		//graphics are only built when rendering, e.g. -Dstan5674.render=false for headless ladder runs
+		Rendering.setEnabled(Boolean.parseBoolean(System.getProperty("stan5674.render", "true")));
 		this.spaceCommand = new SpaceCommand();
 	}
 
@@ -94,6 +97,9 @@ public class CatAdamAgent extends TeamClient {
 			Set<AbstractActionableObject> actionableObjects, 
 			ResourcePile resourcesAvailable, 
 			PurchaseCosts purchaseCosts) {
+		if (spaceCommand.getWorld() == null) {
+			spaceCommand.setWorld(new WorldSnapshot(space, getTeamName()));
+		}
 		return spaceCommand.getTeamPurchases(space, resourcesAvailable, purchaseCosts);
 	}
 
@@ -113,6 +119,9 @@ public class CatAdamAgent extends TeamClient {
 	
 	@Override
 	public Set<SpacewarGraphics> getGraphics() {
+		if (!Rendering.isEnabled()) {
+			return new HashSet<SpacewarGraphics>();
+		}
 		HashSet<SpacewarGraphics> graphics = spaceCommand.getGraphics();
 		HashSet<SpacewarGraphics> newGraphicsClone = ((HashSet<SpacewarGraphics>) graphics.clone());
 		graphics.clear();
@@ -0,0 +1,189 @@
+package stan5674;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+
+import spacesettlers.objects.Asteroid;
+import spacesettlers.simulator.Toroidal2DPhysics;
+import spacesettlers.utilities.Position;
+
+/** Coarse toroidal grid of the resources held by minable asteroids.
+ * Every asteroid's contribution is remembered, so an update only touches the cells of
+ * asteroids that appeared, moved to another cell, were mined or disappeared.  Window sums
+ * come from a summed-area table over the grid tiled twice in each direction, so windows
+ * across the seam cost the same four lookups; the table is only rebuilt after a change **/
+public class DensityMap {
+	/** Default edge length of a cell **/
+	public static final double DEFAULT_CELL_SIZE = 50;
+
+	/** Grid geometry **/
+	private final int cols;
+	private final int rows;
+	private final double cellWidth;
+	private final double cellHeight;
+
+	/** Resources per cell, and the cell and amount each asteroid was counted with **/
+	private final double[] cellTotal;
+	private final Map<UUID, Contribution> contributions;
+	private int stamp;
+
+	/** Summed-area table over the 2cols x 2rows tiling, sat[(r * (2cols + 1)) + c] is the sum above and left of (c, r) **/
+	private final double[] sat;
+	private boolean dirty;
+
+	/** An asteroid's share of the grid as of its last update **/
+	private static class Contribution {
+		int cell;
+		double amount;
+		int seen;
+	}
+
+	/** Builds an empty map with the default cell size **/
+	public DensityMap(Toroidal2DPhysics space){
+		this(space, DEFAULT_CELL_SIZE);
+	} //end DensityMap
+
+	/** Builds an empty map **/
+	public DensityMap(Toroidal2DPhysics space, double cellSize){
+		this.cols = Math.max(1, (int)(space.getWidth() / cellSize));
+		this.rows = Math.max(1, (int)(space.getHeight() / cellSize));
+		this.cellWidth = (double)space.getWidth() / cols;
+		this.cellHeight = (double)space.getHeight() / rows;
+		this.cellTotal = new double[cols * rows];
+		this.contributions = new HashMap<UUID, Contribution>();
+		this.sat = new double[(2 * cols + 1) * (2 * rows + 1)];
+		this.dirty = true;
+	} //end DensityMap
+
+	/** Brings the map up to date with the minable asteroids, changing only what changed **/
+	public void update(Asteroid[] minable){
+		stamp++;
+		for(Asteroid asteroid : minable){
+			int cell = cellOf(asteroid.getPosition());
+			double amount = asteroid.getResources().getTotal();
+			Contribution contribution = contributions.get(asteroid.getId());
+			if(contribution == null){
+				contribution = new Contribution();
+				contribution.cell = cell;
+				contributions.put(asteroid.getId(), contribution);
+				add(cell, amount);
+			} else if(contribution.cell != cell || contribution.amount != amount){
+				add(contribution.cell, -contribution.amount);
+				add(cell, amount);
+				contribution.cell = cell;
+			}
+			contribution.amount = amount;
+			contribution.seen = stamp;
+		}
+
+		//asteroids that were mined out or are gone
+		for(Iterator<Contribution> it = contributions.values().iterator(); it.hasNext();){
+			Contribution contribution = it.next();
+			if(contribution.seen != stamp){
+				add(contribution.cell, -contribution.amount);
+				it.remove();
+			}
+		}
+	} //end update
+
+	/** Adds an amount to a cell, the summed-area table is rebuilt on the next query **/
+	private void add(int cell, double amount){
+		if(amount != 0){
+			cellTotal[cell] += amount;
+			dirty = true;
+		}
+	} //end add
+
+	/** Returns the center of the cell whose window of 2 ceil(radius / cell) + 1 cells a side holds the most
+	 * resources, looking only at cells within reach of near along each axis.  Null if those windows are empty **/
+	public Position densest(Position near, double reach, double radius){
+		int halfCols = halfWindow(radius, cellWidth);
+		int halfRows = halfWindow(radius, cellHeight);
+		int reachCols = Math.min(halfWindow(reach, cellWidth), (cols - 1) / 2);
+		int reachRows = Math.min(halfWindow(reach, cellHeight), (rows - 1) / 2);
+		int nearCol = column(near.getX());
+		int nearRow = row(near.getY());
+		double most = 0;
+		int bestCol = -1;
+		int bestRow = -1;
+		for(int dr = -reachRows; dr <= reachRows; dr++){
+			int r = Math.floorMod(nearRow + dr, rows);
+			for(int dc = -reachCols; dc <= reachCols; dc++){
+				int c = Math.floorMod(nearCol + dc, cols);
+				double total = windowAround(c, r, halfCols, halfRows);
+				if(total > most){
+					most = total;
+					bestCol = c;
+					bestRow = r;
+				}
+			}
+		}
+		if(bestCol < 0){
+			return null;
+		}
+		return new Position((bestCol + 0.5) * cellWidth, (bestRow + 0.5) * cellHeight);
+	} //end densest
+
+	/** Resources in the window of 2 ceil(radius / cell) + 1 cells a side centered on the position's cell **/
+	public double totalAround(Position location, double radius){
+		return windowAround(column(location.getX()), row(location.getY()), halfWindow(radius, cellWidth), halfWindow(radius, cellHeight));
+	} //end totalAround
+
+	/** Cells on each side of the center cell for a window reaching radius, at least the center cell alone **/
+	private static int halfWindow(double radius, double cellSize){
+		return Math.max(0, (int)Math.ceil(radius / cellSize));
+	} //end halfWindow
+
+	/** Sum of the window centered on (col, row) with half cells on each side, capped at the whole grid **/
+	private double windowAround(int col, int row, int halfCols, int halfRows){
+		int windowCols = Math.min(2 * halfCols + 1, cols);
+		int windowRows = Math.min(2 * halfRows + 1, rows);
+		return windowTotal(Math.floorMod(col - halfCols, cols), Math.floorMod(row - halfRows, rows), windowCols, windowRows);
+	} //end windowAround
+
+	/** Sum of the window whose top left cell is (col, row), wrapping across the seam **/
+	private double windowTotal(int col, int row, int windowCols, int windowRows){
+		if(dirty){
+			rebuild();
+		}
+		int stride = 2 * cols + 1;
+		int c2 = col + windowCols;
+		int r2 = row + windowRows;
+		return sat[r2 * stride + c2] - sat[row * stride + c2] - sat[r2 * stride + col] + sat[row * stride + col];
+	} //end windowTotal
+
+	/** Rebuilds the summed-area table over the tiled grid **/
+	private void rebuild(){
+		int stride = 2 * cols + 1;
+		for(int r = 1; r <= 2 * rows; r++){
+			double rowSum = 0;
+			for(int c = 1; c <= 2 * cols; c++){
+				rowSum += cellTotal[((r - 1) % rows) * cols + (c - 1) % cols];
+				sat[r * stride + c] = sat[(r - 1) * stride + c] + rowSum;
+			}
+		}
+		dirty = false;
+	} //end rebuild
+
+	/** Resources counted in the whole map **/
+	public double getTotal(){
+		return windowTotal(0, 0, cols, rows);
+	} //end getTotal
+
+	/** Wrapped grid column of an x coordinate **/
+	private int column(double x){
+		return Math.floorMod((int)Math.floor(x / cellWidth), cols);
+	} //end column
+
+	/** Wrapped grid row of a y coordinate **/
+	private int row(double y){
+		return Math.floorMod((int)Math.floor(y / cellHeight), rows);
+	} //end row
+
+	/** Cell index of a position **/
+	private int cellOf(Position position){
+		return row(position.getY()) * cols + column(position.getX());
+	} //end cellOf
+} //end DensityMap class
@@ -0,0 +1,263 @@
+package stan5674;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** K-means over points on the torus, stored as primitive coordinate arrays.
+ * Seeds with k-means++, moves each centroid by the mean wrapped displacement of its points,
+ * and stops once no centroid moves more than the tolerance.  The centroids of the last call
+ * seed the next one, so re-clustering a slowly changing field takes a few iterations **/
+public class KMeansEngine {
+	/** Defaults for the iteration cap and the convergence tolerance in world units **/
+	public static final int DEFAULT_MAX_ITERATIONS = 100;
+	public static final double DEFAULT_TOLERANCE = 0.5;
+
+	/** Point counts from which the assignment step runs on the fork-join pool **/
+	public static final int PARALLEL_THRESHOLD = 4096;
+	private static final int POINTS_PER_TASK = 1024;
+
+	private final double width;
+	private final double height;
+	private final int k;
+	private final int maxIterations;
+	private final double tolerance;
+	private final Random random;
+
+	/** Centroids, kept between calls for the warm start **/
+	private final double[] centroidX;
+	private final double[] centroidY;
+	private boolean warm;
+
+	/** Per call state, grown as needed **/
+	private int[] assignment;
+	private final double[] sumX;
+	private final double[] sumY;
+	private final int[] count;
+	private int lastIterations;
+
+	/** Builds an engine for k clusters on a torus of the given size **/
+	public KMeansEngine(double width, double height, int k, Random random){
+		this(width, height, k, random, DEFAULT_MAX_ITERATIONS, DEFAULT_TOLERANCE);
+	} //end KMeansEngine
+
+	/** Builds an engine with its own iteration cap and tolerance **/
+	public KMeansEngine(double width, double height, int k, Random random, int maxIterations, double tolerance){
+		this.width = width;
+		this.height = height;
+		this.k = k;
+		this.random = random;
+		this.maxIterations = maxIterations;
+		this.tolerance = tolerance;
+		this.centroidX = new double[k];
+		this.centroidY = new double[k];
+		this.sumX = new double[k];
+		this.sumY = new double[k];
+		this.count = new int[k];
+		this.assignment = new int[0];
+	} //end KMeansEngine
+
+	/** Clusters the first n points, starting from the previous centroids if there are any.
+	 * Returns the number of iterations run **/
+	public int cluster(double[] x, double[] y, int n){
+		lastIterations = 0;
+		if(n == 0){
+			return 0;
+		}
+		if(assignment.length < n){
+			assignment = new int[n];
+		}
+		if(!warm){
+			seed(x, y, n);
+			warm = true;
+		}
+
+		while(lastIterations < maxIterations){
+			lastIterations++;
+			assign(x, y, n);
+
+			//mean displacement from the current centroid, so clusters across the seam stay whole
+			Arrays.fill(sumX, 0);
+			Arrays.fill(sumY, 0);
+			Arrays.fill(count, 0);
+			for(int p = 0; p < n; p++){
+				int c = assignment[p];
+				sumX[c] += wrap(x[p] - centroidX[c], width);
+				sumY[c] += wrap(y[p] - centroidY[c], height);
+				count[c]++;
+			}
+
+			double moved = 0;
+			for(int c = 0; c < k; c++){
+				double dx, dy;
+				if(count[c] == 0){
+					//an empty cluster takes over the point worst served by its centroid
+					int far = farthestPoint(x, y, n);
+					dx = wrap(x[far] - centroidX[c], width);
+					dy = wrap(y[far] - centroidY[c], height);
+					assignment[far] = c;
+				} else {
+					dx = sumX[c] / count[c];
+					dy = sumY[c] / count[c];
+				}
+				centroidX[c] = mod(centroidX[c] + dx, width);
+				centroidY[c] = mod(centroidY[c] + dy, height);
+				moved = Math.max(moved, dx * dx + dy * dy);
+			}
+			if(moved < tolerance * tolerance){
+				break;
+			}
+		}
+		assign(x, y, n); //assignment matches the final centroids
+		return lastIterations;
+	} //end cluster
+
+	/** k-means++: the first centroid is a random point, each next one a point drawn with
+	 * probability proportional to its squared distance from the centroids so far **/
+	private void seed(double[] x, double[] y, int n){
+		double[] nearest = new double[n];
+		Arrays.fill(nearest, Double.POSITIVE_INFINITY);
+		int pick = random.nextInt(n);
+		for(int c = 0; c < k; c++){
+			centroidX[c] = x[pick];
+			centroidY[c] = y[pick];
+
+			double total = 0;
+			for(int p = 0; p < n; p++){
+				nearest[p] = Math.min(nearest[p], distanceSq(x[p], y[p], centroidX[c], centroidY[c]));
+				total += nearest[p];
+			}
+			if(total <= 0){
+				continue; //fewer distinct points than clusters, keep the last pick
+			}
+			double target = random.nextDouble() * total;
+			for(int p = 0; p < n; p++){
+				target -= nearest[p];
+				if(target <= 0){
+					pick = p;
+					break;
+				}
+			}
+		}
+	} //end seed
+
+	/** Assigns every point to its nearest centroid, on the fork-join pool for large inputs **/
+	private void assign(double[] x, double[] y, int n){
+		if(n >= PARALLEL_THRESHOLD){
+			ForkJoinPool.commonPool().invoke(new AssignTask(x, y, 0, n));
+		} else {
+			assignRange(x, y, 0, n);
+		}
+	} //end assign
+
+	/** Assigns the points low .. high-1, writes only their own slots **/
+	private void assignRange(double[] x, double[] y, int low, int high){
+		for(int p = low; p < high; p++){
+			int best = 0;
+			double shortest = Double.POSITIVE_INFINITY;
+			for(int c = 0; c < k; c++){
+				double dist = distanceSq(x[p], y[p], centroidX[c], centroidY[c]);
+				if(dist < shortest){
+					shortest = dist;
+					best = c;
+				}
+			}
+			assignment[p] = best;
+		}
+	} //end assignRange
+
+	/** Splits the assignment step into ranges of points **/
+	private class AssignTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final double[] x;
+		private final double[] y;
+		private final int low;
+		private final int high;
+
+		AssignTask(double[] x, double[] y, int low, int high){
+			this.x = x;
+			this.y = y;
+			this.low = low;
+			this.high = high;
+		} //end AssignTask
+
+		@Override
+		protected void compute(){
+			if(high - low > POINTS_PER_TASK){
+				int middle = (low + high) >>> 1;
+				invokeAll(new AssignTask(x, y, low, middle), new AssignTask(x, y, middle, high));
+			} else {
+				assignRange(x, y, low, high);
+			}
+		} //end compute
+	} //end AssignTask class
+
+	/** The point farthest from the centroid it is assigned to **/
+	private int farthestPoint(double[] x, double[] y, int n){
+		int far = 0;
+		double longest = -1;
+		for(int p = 0; p < n; p++){
+			int c = assignment[p];
+			double dist = distanceSq(x[p], y[p], centroidX[c], centroidY[c]);
+			if(dist > longest){
+				longest = dist;
+				far = p;
+			}
+		}
+		return far;
+	} //end farthestPoint
+
+	/** Forgets the centroids, the next call seeds from scratch **/
+	public void reset(){
+		warm = false;
+	} //end reset
+
+	public int getK(){
+		return k;
+	} //end getK
+
+	public double getCentroidX(int c){
+		return centroidX[c];
+	} //end getCentroidX
+
+	public double getCentroidY(int c){
+		return centroidY[c];
+	} //end getCentroidY
+
+	/** Cluster of a point of the last call **/
+	public int getAssignment(int point){
+		return assignment[point];
+	} //end getAssignment
+
+	/** Iterations run by the last call **/
+	public int getLastIterations(){
+		return lastIterations;
+	} //end getLastIterations
+
+	/** Squared toroidal distance **/
+	private double distanceSq(double x1, double y1, double x2, double y2){
+		double dx = wrap(x1 - x2, width);
+		double dy = wrap(y1 - y2, height);
+		return dx * dx + dy * dy;
+	} //end distanceSq
+
+	/** Wraps a coordinate difference into [-size/2, size/2) **/
+	private static double wrap(double delta, double size){
+		if(delta >= 1.5 * size || delta < -1.5 * size){
+			delta = mod(delta, size); //only for points off the map, one shift covers the rest
+		}
+		if(delta >= size / 2){
+			return delta - size;
+		} else if(delta < -size / 2){
+			return delta + size;
+		}
+		return delta;
+	} //end wrap
+
+	/** Wraps a coordinate into [0, size) **/
+	private static double mod(double value, double size){
+		value %= size;
+		return (value < 0) ? value + size : value;
+	} //end mod
+} //end KMeansEngine class
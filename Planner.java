@@ -1,6 +1,7 @@
 package stan5674;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -26,6 +27,10 @@ public class Planner {
 	/** SpaceCommand it is making plans for **/
 	private SpaceCommand spaceCommand;
 	
+	/** Precomputed policy, best next strategy for each clamped (ships, bases) state, null where the goal is unreachable **/
+	private Strategy[] policy;
+	private int policyCap;
+	
 	/** Node class for the graph **/
 	private class Node {
 		Strategy strat;
@@ -115,4 +120,80 @@ public class Planner {
 			return currentStrat;
 		}
 	}
+	
+	/** Enumerates the whole state space once and stores the strategy the BFS would pick in every state.
+	 * The children of a node only depend on its ships and bases, so the table is indexed by those alone.
+	 * Counts at or above the cap behave the same as the cap, every precondition and the goal test
+	 * compare against the goal and minimum values, so the counts are clamped to it **/
+	public void buildPolicy(){
+		policyCap = Math.max(Math.max(goalShips, goalBases), minShips);
+		int size = policyCap + 1;
+		int[] dist = new int[size * size];
+		int[][] children = new int[size * size][];
+		Arrays.fill(dist, Integer.MAX_VALUE);
+		for(int ships = 0; ships < size; ships++){
+			for(int bases = 0; bases < size; bases++){
+				int state = ships * size + bases;
+				children[state] = successors(ships, bases);
+				if(ships >= goalShips && bases >= goalBases){
+					dist[state] = 0;
+				}
+			}
+		}
+		
+		//relax distances to the goal until no state improves, the space is a few hundred states
+		boolean changed = true;
+		while(changed){
+			changed = false;
+			for(int state = 0; state < dist.length; state++){
+				for(int child : children[state]){
+					if(child >= 0 && dist[child] != Integer.MAX_VALUE && dist[child] + 1 < dist[state]){
+						dist[state] = dist[child] + 1;
+						changed = true;
+					}
+				}
+			}
+		}
+		
+		//the BFS returns the first action, in BUILD, EXPAND, FREE order, that starts a shortest plan
+		Strategy[] order = {Strategy.BUILD_FLEET, Strategy.EXPAND_EMPIRE, Strategy.FREE_MINE};
+		policy = new Strategy[size * size];
+		for(int state = 0; state < dist.length; state++){
+			if(dist[state] == 0){
+				policy[state] = Strategy.FREE_MINE; //already at goal
+				continue;
+			}
+			for(int action = 0; action < order.length; action++){
+				int child = children[state][action];
+				if(child >= 0 && dist[child] != Integer.MAX_VALUE && dist[child] + 1 == dist[state]){
+					policy[state] = order[action];
+					break;
+				}
+			}
+		}
+	} //end buildPolicy
+	
+	/** Clamped states reached by build fleet, expand empire and free mine from a state, -1 where the preconditions fail.
+	 * Same effects as generateGraph **/
+	private int[] successors(int ships, int bases){
+		int size = policyCap + 1;
+		int[] next = {-1, -1, -1};
+		if(spaceCommand.canBuildFleet(ships, bases)){
+			int built = (ships < minShips) ? minShips : bases + 1;
+			next[0] = Math.min(built, policyCap) * size + bases;
+		}
+		if(spaceCommand.canExpandEmpire(ships, bases)){
+			next[1] = ships * size + ships;
+		}
+		if(spaceCommand.canFreeMine(ships)){
+			next[2] = ships * size + bases;
+		}
+		return next;
+	} //end successors
+	
+	/** Looks up the precomputed best strategy, same as generateGraph followed by findBestStrategy.
+	 * Returns null when the goal cannot be reached, where the BFS would never finish **/
+	public Strategy getPolicy(int ships, int bases){
+		return policy[Math.min(ships, policyCap) * (policyCap + 1) + Math.min(bases, policyCap)];
+	} //end getPolicy
 } //end Planner class
@@ -0,0 +1,172 @@
+package stan5674;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+
+import spacesettlers.objects.Asteroid;
+import spacesettlers.objects.Ship;
+import spacesettlers.simulator.Toroidal2DPhysics;
+
+/** Team level assignment of prospecting ships to asteroids, solved once per tick.
+ * Each ship only considers its k nearest unobstructed prospects, and the ships x candidates
+ * distance matrix is solved with the Hungarian algorithm, so no two ships head for the same
+ * rock and the total distance flown is as small as the candidates allow **/
+public class ProspectAssignment {
+	/** Default number of candidate prospects per ship **/
+	public static final int DEFAULT_CANDIDATES = 5;
+
+	/** Cost of a ship/prospect pair that is not a candidate, far above any distance **/
+	private static final double UNASSIGNED = 1e9;
+
+	private final int candidates;
+	private final HashMap<UUID, Asteroid> assigned;
+
+	/** Default constructor, with the default number of candidates **/
+	public ProspectAssignment(){
+		this(DEFAULT_CANDIDATES);
+	} //end ProspectAssignment
+
+	/** Builds an assignment stage pruning to the given number of candidates per ship **/
+	public ProspectAssignment(int candidates){
+		this.candidates = candidates;
+		this.assigned = new HashMap<UUID, Asteroid>();
+	} //end ProspectAssignment
+
+	/** Assigns the pilots to prospects.  Prospects claimed by pilots outside the batch are left
+	 * alone, the batch's own targets are free to be handed around **/
+	public void solve(Toroidal2DPhysics space, WorldSnapshot world, List<ShipState> pilots, List<Ship> vessels,
+			TargetReservations reservations){
+		assigned.clear();
+		int n = pilots.size();
+		if(n == 0){
+			return;
+		}
+
+		//how many of each object's claims come from the batch
+		HashMap<UUID, int[]> batchClaims = new HashMap<UUID, int[]>();
+		for(ShipState pilot : pilots){
+			if(pilot.getTarget() != null){
+				int[] count = batchClaims.get(pilot.getTarget().getId());
+				if(count == null){
+					batchClaims.put(pilot.getTarget().getId(), new int[] {1});
+				} else {
+					count[0]++;
+				}
+			}
+		}
+
+		//k nearest candidates per ship, columns are the union of them
+		List<Asteroid> columns = new ArrayList<Asteroid>();
+		HashMap<UUID, Integer> columnOf = new HashMap<UUID, Integer>();
+		List<List<Asteroid>> nearest = new ArrayList<List<Asteroid>>(n);
+		for(int i = 0; i < n; i++){
+			ShipState pilot = pilots.get(i);
+			Ship vessel = vessels.get(i);
+			pilot.filter.setBatch(reservations, batchClaims, world.getObstructionGrid(), space, vessel);
+			List<Asteroid> found = world.getProspectIndex().kNearest(vessel.getPosition(), candidates, pilot.filter);
+			for(Asteroid prospect : found){
+				if(!columnOf.containsKey(prospect.getId())){
+					columnOf.put(prospect.getId(), columns.size());
+					columns.add(prospect);
+				}
+			}
+			nearest.add(found);
+		}
+		if(columns.isEmpty()){
+			return;
+		}
+
+		//the solver needs at least as many columns as rows, padding columns stay unassigned
+		double[][] cost = new double[n][Math.max(n, columns.size())];
+		for(int i = 0; i < n; i++){
+			Arrays.fill(cost[i], UNASSIGNED);
+			for(Asteroid prospect : nearest.get(i)){
+				cost[i][columnOf.get(prospect.getId())] = space.findShortestDistance(vessels.get(i).getPosition(), prospect.getPosition());
+			}
+		}
+
+		int[] column = hungarian(cost);
+		for(int i = 0; i < n; i++){
+			if(column[i] >= 0 && cost[i][column[i]] < UNASSIGNED){
+				assigned.put(pilots.get(i).getVessel(), columns.get(column[i]));
+			}
+		}
+	} //end solve
+
+	/** Returns the prospect assigned to the ship this tick, or null if it got none **/
+	public Asteroid getAssignment(UUID shipId){
+		return assigned.get(shipId);
+	} //end getAssignment
+
+	/** Number of ships assigned by the last solve **/
+	public int size(){
+		return assigned.size();
+	} //end size
+
+	/** Minimum cost assignment of rows to distinct columns, needs no more rows than columns.
+	 * Shortest augmenting paths with row and column potentials, O(rows^2 * columns) **/
+	static int[] hungarian(double[][] cost){
+		int n = cost.length;
+		int m = cost[0].length;
+		double[] u = new double[n + 1];
+		double[] v = new double[m + 1];
+		int[] rowOf = new int[m + 1]; //row matched to each column, 1-based, 0 if none
+		int[] way = new int[m + 1];
+		double[] minv = new double[m + 1];
+		boolean[] used = new boolean[m + 1];
+
+		for(int i = 1; i <= n; i++){
+			rowOf[0] = i;
+			int j0 = 0;
+			Arrays.fill(minv, Double.POSITIVE_INFINITY);
+			Arrays.fill(used, false);
+			do {
+				used[j0] = true;
+				int i0 = rowOf[j0];
+				double delta = Double.POSITIVE_INFINITY;
+				int j1 = 0;
+				for(int j = 1; j <= m; j++){
+					if(!used[j]){
+						double reduced = cost[i0 - 1][j - 1] - u[i0] - v[j];
+						if(reduced < minv[j]){
+							minv[j] = reduced;
+							way[j] = j0;
+						}
+						if(minv[j] < delta){
+							delta = minv[j];
+							j1 = j;
+						}
+					}
+				}
+				for(int j = 0; j <= m; j++){
+					if(used[j]){
+						u[rowOf[j]] += delta;
+						v[j] -= delta;
+					} else {
+						minv[j] -= delta;
+					}
+				}
+				j0 = j1;
+			} while(rowOf[j0] != 0);
+
+			//flip the augmenting path
+			do {
+				int j1 = way[j0];
+				rowOf[j0] = rowOf[j1];
+				j0 = j1;
+			} while(j0 != 0);
+		}
+
+		int[] columnOfRow = new int[n];
+		Arrays.fill(columnOfRow, -1);
+		for(int j = 1; j <= m; j++){
+			if(rowOf[j] != 0){
+				columnOfRow[rowOf[j] - 1] = j - 1;
+			}
+		}
+		return columnOfRow;
+	} //end hungarian
+} //end ProspectAssignment class
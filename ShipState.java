@@ -1,8 +1,7 @@
 package stan5674;
 
-import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.awt.Color;
@@ -15,14 +14,28 @@ import spacesettlers.graphics.*;
 import spacesettlers.objects.Ship;
 import spacesettlers.simulator.Toroidal2DPhysics;
 import spacesettlers.utilities.Position;
+import stan5674.astar.ObstacleGrid;
+import stan5674.astar.Rendering;
 
 public class ShipState {
 		/** The ID ship the state is based on **/
 		UUID vessel;
 		
-		/** Current target of the ship **/
+		/** Current target of the ship, and the team index every change is reported to **/
 		AbstractObject target;
+		TargetReservations reservations;
 		LineGraphics graphics;
+		
+		/** Trajectory the line is drawn for, the line itself is only built when asked for **/
+		Toroidal2DPhysics graphicsSpace;
+		Position graphicsFrom;
+		AbstractObject graphicsTarget;
+
+		/** Reused candidate set for obstruction checks **/
+		Set<AbstractObject> scratch;
+		
+		/** Reused filter for nearest searches, set up before each query so none of them allocates **/
+		TargetFilter filter;
 
 		/** Role of ship **/
 		boolean diamondChaser;
@@ -33,6 +46,8 @@ public class ShipState {
 			this.vessel = vessel;
 			this.target = null;
 			this.graphics = null;
+			this.scratch = new HashSet<AbstractObject>();
+			this.filter = new TargetFilter();
 			this.diamondChaser = false;
 			this.goldDigger = false;
 		} //end ShipState
@@ -42,11 +57,30 @@ public class ShipState {
 			return target;
 		} //end getTarget
 		
-		/**Setter for target **/
+		/**Setter for target, keeps the team's reservations up to date **/
 		public void setTarget(AbstractObject target){
+			if(reservations != null){
+				reservations.transfer(this.target, target);
+			}
 			this.target = target;
 		} //end setTarget
 		
+		/** Determines if the object is this ship's current target **/
+		public boolean isTarget(AbstractObject object){
+			return target != null && object != null && target.getId().equals(object.getId());
+		} //end isTarget
+		
+		/** Joins the team's reservation index, claiming the current target **/
+		public void setReservations(TargetReservations reservations){
+			if(this.reservations != null){
+				this.reservations.transfer(target, null);
+			}
+			this.reservations = reservations;
+			if(reservations != null){
+				reservations.transfer(null, target);
+			}
+		} //end setReservations
+		
 		/** Getter for vessel **/
 		public UUID getVessel(){
 			return vessel;
@@ -88,94 +122,36 @@ public class ShipState {
 			return false;
 		} //end atMaxCargo
 		
-		/** Returns the closest beacon to the ship, can avoid certain beacons if needed **/
-		public Beacon getNearestBeacon(Toroidal2DPhysics space, Ship vessel, Set<AbstractObject> avoid){
-			if(target != null && avoid != null && avoid.contains(target)){
-				avoid.remove(target); //don't avoid your own target
-			}
-			
-			Set<Beacon> beacons = space.getBeacons();
-			if(avoid != null){
-				beacons.removeAll(avoid);
+		/** Returns the closest beacon to the ship, can avoid the beacons other pilots claimed if needed **/
+		public Beacon getNearestBeacon(Toroidal2DPhysics space, WorldSnapshot world, Ship vessel, TargetReservations avoid){
+			if(avoid == null){
+				return world.getBeaconIndex().nearest(vessel.getPosition());
 			}
-			double shortest = Double.POSITIVE_INFINITY;
-			Position location = vessel.getPosition();
-			double dist;
-			Beacon nearestBeacon = null;
-
-			for (Beacon beacon : beacons) {
-				dist = space.findShortestDistance(location, beacon.getPosition());
-
-				if (dist < shortest) {
-					shortest = dist;
-					nearestBeacon = beacon;
-				}
-			}
-			return nearestBeacon;
+			filter.set(avoid, null, space, vessel);
+			return world.getBeaconIndex().nearest(vessel.getPosition(), filter);
 		} //end getNearestBeacon
 		
-		/** Returns the closest base to the ship **/
-		public Base getNearestBase(Toroidal2DPhysics space, Ship vessel, boolean refuel, double refuelMin){
-			Set<Base> bases = space.getBases();
-			double shortest = Double.POSITIVE_INFINITY;
-			Position location = vessel.getPosition();
-			double dist;
-			Base nearestBase = null;
-
-			//find closest base
-			for (Base base : bases) {
-				if (base.getTeamName().equalsIgnoreCase(vessel.getTeamName())){
-					dist = space.findShortestDistance(location, base.getPosition());
-
-					if (dist < shortest) {		
-						if (refuel){
-							if (base.getEnergy() >= refuelMin){
-								shortest = dist;
-								nearestBase = base;
-							}
-						} else {
-							shortest = dist;
-							nearestBase = base;
-						}
-					}
-				}
+		/** Returns the closest of our bases to the ship **/
+		public Base getNearestBase(Toroidal2DPhysics space, WorldSnapshot world, Ship vessel, boolean refuel, double refuelMin){
+			if(!refuel){
+				return world.getBaseIndex().nearest(vessel.getPosition());
 			}
-			return nearestBase;
+			return world.getBaseIndex().nearest(vessel.getPosition(), base -> base.getEnergy() >= refuelMin);
 		} //end getNearestBase
 		
-		/** Returns the closest prospect to the ship, can avoid given objects if needed **/
-		public Asteroid getNearestProspect(Toroidal2DPhysics space, Ship vessel,  Set<AbstractObject> avoid){
-			if(target != null && avoid != null && avoid.contains(target)){
-				avoid.remove(target); //don't avoid your own target
-			}
-
-			List<Asteroid> prospects = getMinableAsteroids(space);
-			if(avoid != null){
-				prospects.removeAll(avoid);
-			}
-			double shortest = Double.POSITIVE_INFINITY;
-			Position location = vessel.getPosition();
-			double dist;
-			Asteroid nearestProspect = null;
-
-			for (Asteroid prospect : prospects){
-				dist = space.findShortestDistance(location, prospect.getPosition());
-
-				if (dist<shortest && space.isPathClearOfObstructions(vessel.getPosition(), prospect.getPosition(), getUnminableAsteroids(space), vessel.getRadius())){ //only target unobstructed prospects
-					shortest = dist;
-					nearestProspect = prospect;
-				}
-			}
-
-			return nearestProspect;
+		/** Returns the closest prospect to the ship, can avoid the prospects other pilots claimed if needed **/
+		public Asteroid getNearestProspect(Toroidal2DPhysics space, WorldSnapshot world, Ship vessel, TargetReservations avoid){
+			//only target unobstructed prospects
+			filter.set(avoid, world.getObstructionGrid(), space, vessel);
+			return world.getProspectIndex().nearest(vessel.getPosition(), filter);
 		} //end getNearestProspect 
 
 		/** Returns the closest beacon or base to the ship **/
-		public AbstractObject getNearestRefuel(Toroidal2DPhysics space, Ship vessel, double refuelMin){
+		public AbstractObject getNearestRefuel(Toroidal2DPhysics space, WorldSnapshot world, Ship vessel, double refuelMin){
 			Position location = vessel.getPosition();
 
-			Base nearestBase = getNearestBase(space, vessel, true, refuelMin);
-			Beacon nearestBeacon = getNearestBeacon(space, vessel, null);
+			Base nearestBase = getNearestBase(space, world, vessel, true, refuelMin);
+			Beacon nearestBeacon = getNearestBeacon(space, world, vessel, null);
 		
 			if(nearestBeacon != null && nearestBase == null){
 				return nearestBeacon;
@@ -189,60 +165,79 @@ public class ShipState {
 					return nearestBase;
 				}
 			}
-			return getNearestBase(space, vessel, false, refuelMin); //failsafe
+			return getNearestBase(space, world, vessel, false, refuelMin); //failsafe
 		} //end getNearestProspect
 		
 		/** Returns the highest value asteroid in the game - global data **/
-		public Asteroid getDiamond(Toroidal2DPhysics space){
-			List<Asteroid> prospects = getMinableAsteroids(space);
-			Asteroid diamond = prospects.get(0);
+		public Asteroid getDiamond(WorldSnapshot world){
+			Asteroid diamond = null;
 			
-			for (Asteroid prospect : prospects){
-				if(prospect.getResources().getTotal() > diamond.getResources().getTotal()){
+			for (Asteroid prospect : world.getMinable()){
+				if(diamond == null || prospect.getResources().getTotal() > diamond.getResources().getTotal()){
 					diamond = prospect;
 				}
 			}
 			return diamond;
 		} //end getDiamond
-		
-		/** Helper function to only return asteroids with resources **/
-		public List<Asteroid> getMinableAsteroids(Toroidal2DPhysics space){
-			List<Asteroid> asteroids = new ArrayList<Asteroid>(space.getAsteroids());
-			List<Asteroid> minable = new ArrayList<Asteroid>();
 
-			for (Asteroid ast : asteroids){
-				if (ast.isMineable()){
-					minable.add(ast);
-				} 
-			}
-			return minable;
-		} // end getMinableAsteroids
-		
-		/** Helper function to only return asteroids without resources **/
-		public Set<AbstractObject> getUnminableAsteroids(Toroidal2DPhysics space){
-			List<Asteroid> asteroids = new ArrayList<Asteroid>(space.getAsteroids());
-			List<AbstractObject> unminable = new ArrayList<AbstractObject>();
-
-			for (Asteroid ast : asteroids){
-				if (!ast.isMineable()){
-					unminable.add(ast);
-				} 
-			}
-			return new HashSet<AbstractObject>(unminable);
-		} // end getMinableAsteroids
+		/** Accepts objects no other pilot has claimed and, given an obstruction grid, only those the ship can fly straight to **/
+		class TargetFilter implements SpatialIndex.Filter<AbstractObject> {
+			TargetReservations avoid;
+			Map<UUID, int[]> batchClaims;
+			ObstacleGrid obstructions;
+			Toroidal2DPhysics space;
+			Ship vessel;
+			
+			/** Points the filter at the next query, either of avoid and obstructions can be null to skip that check **/
+			void set(TargetReservations avoid, ObstacleGrid obstructions, Toroidal2DPhysics space, Ship vessel){
+				this.avoid = avoid;
+				this.batchClaims = null;
+				this.obstructions = obstructions;
+				this.space = space;
+				this.vessel = vessel;
+			} //end set
+			
+			/** Same as set, but only claims from outside the batch count, the batch is reassigned as a whole **/
+			void setBatch(TargetReservations avoid, Map<UUID, int[]> batchClaims, ObstacleGrid obstructions, Toroidal2DPhysics space, Ship vessel){
+				set(avoid, obstructions, space, vessel);
+				this.batchClaims = batchClaims;
+			} //end setBatch
+			
+			public boolean accept(AbstractObject object){
+				if(batchClaims != null){
+					int[] fromBatch = batchClaims.get(object.getId());
+					if(avoid.getClaims(object) > (fromBatch == null ? 0 : fromBatch[0])){
+						return false;
+					}
+				} else if(avoid != null && !isTarget(object) && avoid.isClaimedByOthers(object, ShipState.this)){ //don't avoid your own target
+					return false;
+				}
+				return obstructions == null || obstructions.isPathClear(space, vessel.getPosition(), object.getPosition(), 
+						vessel.getRadius(), scratch);
+			} //end accept
+		} //end TargetFilter class
 
 		/** Updates the line between ship and target **/
 		public void setGraphics(Toroidal2DPhysics space, Ship vessel){
-			if(this.target != null){
-				LineGraphics line = new LineGraphics(vessel.getPosition(), target.getPosition(), 
-				space.findShortestDistanceVector(vessel.getPosition(), target.getPosition()));
-				line.setLineColor(Color.RED);
-				this.graphics = line;
+			if(this.target != null && Rendering.isEnabled()){
+				this.graphicsSpace = space;
+				this.graphicsFrom = vessel.getPosition();
+				this.graphicsTarget = target;
+				this.graphics = null; //rebuilt lazily
 			}
 		} //end setGraphics	
 
-		/** Returns ships trajectory **/
+		/** Returns ships trajectory, building the line on first request **/
 		public LineGraphics getGraphics(){
+			if(!Rendering.isEnabled() || graphicsTarget == null){
+				return null;
+			}
+			if(this.graphics == null){
+				LineGraphics line = new LineGraphics(graphicsFrom, graphicsTarget.getPosition(), 
+				graphicsSpace.findShortestDistanceVector(graphicsFrom, graphicsTarget.getPosition()));
+				line.setLineColor(Color.RED);
+				this.graphics = line;
+			}
 			return this.graphics;
 		} //end getGraphics
 } //end ShipState class
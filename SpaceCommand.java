@@ -1,5 +1,6 @@
 package stan5674;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -25,6 +26,15 @@ import spacesettlers.utilities.Vector2D;
 import spacesettlers.actions.DoNothingAction;
 import spacesettlers.graphics.LineGraphics;
 import spacesettlers.graphics.SpacewarGraphics;
+import stan5674.astar.AnytimeResult;
+import stan5674.astar.Graph;
+import stan5674.astar.IndexedAStar;
+import stan5674.astar.Landmarks;
+import stan5674.astar.PathCache;
+import stan5674.astar.PathSmoother;
+import stan5674.astar.Rendering;
+import stan5674.astar.Roadmap;
+import stan5674.astar.Vertex;
 
 
 public class SpaceCommand {
@@ -40,26 +50,52 @@ public class SpaceCommand {
 	private final double FUEL_COEF = 45; //min amount of fuel to seek refuel
 	private final double FRONTIER = 200; //min distance between bases
 	private final double MIN_BASE_FUEL = 1000; //min amount to consider base for refuel
+	private final long PLAN_BUDGET = 5000000; //nanoseconds of path planning per tick, shared by the fleet
 	
 	
 	/** PDDL goals and high level strategy tracker */
 	private final int GOAL_BASES = 10; //goal number of bases
 	private final int GOAL_SHIPS = 10; //goal number of ships
 	private final int MIN_SHIPS = 5; //minimum number of ships for a fleet
+	private final int GOLDMINE_CLUSTERS = 9; //number of asteroid clusters to pick the goldmine from
+	private final int GOLDMINE_REFRESH = 20; //ticks before the goldmine is searched for again
+	private final double GOLDMINE_RADIUS = 100; //half width of the region a goldmine is scored over
 	private Strategy strategy; //current strategy in use
 	private Planner planner; //determines high level strategy to follow
 	private Position goldmine; //high resource density location
+	private int goldmineFound; //timestep the goldmine was last searched for
+	private KMeansEngine goldmineClusters; //clusters of minable asteroids, kept between searches
+	private DensityMap density; //resources per region, updated as asteroids change
 	
 	/** Tracks the pilot states of all instantiated ships, and current roles */
 	private HashMap<UUID, ShipState> pilots;
+	private TargetReservations reservations; //who is headed where, updated as targets change
+	private ProspectAssignment prospects; //this tick's joint ship to asteroid assignment
 	private List<Base> bases;
 	
+	/** Snapshot of the current tick shared by all ship decisions */
+	private WorldSnapshot world;
+	
+	/** Team roadmap shared by every ship, brought up to date once per tick */
+	private Roadmap roadmap;
+	private Landmarks landmarks;
+	private IndexedAStar pathEngine;
+	private PathSmoother smoother;
+	private PathCache pathCache;
+	private Set<AbstractObject> scratch;
+	
 	/** Default constructor, creates a space command class */ 
 	SpaceCommand() {
 		this.bases = new LinkedList<Base>();
 		this.pilots = new HashMap<UUID, ShipState>();
+		this.reservations = new TargetReservations();
+		this.prospects = new ProspectAssignment();
 		this.strategy = Strategy.BUILD_FLEET; //default to free mine at beginning
 		this.planner = new Planner(GOAL_SHIPS, GOAL_BASES, MIN_SHIPS, this);
+		this.planner.buildPolicy(); //the state space is fixed by the goals, plan for all of it once
+		this.pathEngine = new IndexedAStar();
+		this.smoother = new PathSmoother();
+		this.scratch = new HashSet<AbstractObject>();
 	} //end Planner constructor
 	
 	/** Getter for hashmap of pilots **/
@@ -70,6 +106,7 @@ public class SpaceCommand {
 	/** Adds a new pilot **/
 	public void addShip(UUID shipId, ShipState pilot){
 		pilots.put(shipId, pilot);
+		pilot.setReservations(reservations);
 		
 		if(pilots.size() == 1){
 			//Set first ships to be the diamond chaser!
@@ -90,10 +127,12 @@ public class SpaceCommand {
 		bases.add(base);
 	} //end addBase
 	
-	/** Uses PDDL searching to decide which high level strategy to follow **/ 
+	/** Uses PDDL searching to decide which high level strategy to follow, read from the planner's precomputed policy **/ 
 	public void decideStrategy(){
-		planner.generateGraph(strategy, pilots.size(), bases.size());
-		this.strategy = planner.findBestStrategy();
+		Strategy next = planner.getPolicy(pilots.size(), bases.size());
+		if(next != null){
+			this.strategy = next;
+		}
 	} //end decidePlan
 	
 	/** Checks if the strategy needs to be replanned based on strat preconditions **/
@@ -114,6 +153,8 @@ public class SpaceCommand {
 		if(replanNeeded() == true){
 			decideStrategy();
 		}
+		updateRoadmap(space);
+		updateDensity(space);
 		
 		Map<UUID, AbstractAction> actions = null;
 		switch (strategy){
@@ -135,6 +176,131 @@ public class SpaceCommand {
 		return actions;
 	} //end getPilotCommands
 	
+	/** Getter for the current world snapshot **/
+	public WorldSnapshot getWorld(){
+		return world;
+	} //end getWorld
+	
+	/** Sets the snapshot used by this tick's decisions **/
+	public void setWorld(WorldSnapshot world){
+		this.world = world;
+	} //end setWorld
+	
+	/** Builds the team roadmap on first use, then only refreshes it near obstacles that moved **/
+	public void updateRoadmap(Toroidal2DPhysics space){
+		if(roadmap == null){
+			roadmap = new Roadmap(space, new Random());
+			landmarks = new Landmarks(roadmap);
+			pathCache = new PathCache(space);
+		}
+		roadmap.update(space, world.getTeamName());
+		pathCache.update(space);
+	} //end updateRoadmap
+	
+	/** Builds the density map on first use, then only moves the asteroids that changed **/
+	public void updateDensity(Toroidal2DPhysics space){
+		if(density == null){
+			density = new DensityMap(space);
+		}
+		density.update(world.getMinable());
+	} //end updateDensity
+	
+	/** Getter for the resource density map **/
+	public DensityMap getDensity(){
+		return density;
+	} //end getDensity
+	
+	/** Plans a path over the shared roadmap, attaching start and goal only for this search **/
+	public Vertex[] planPath(Toroidal2DPhysics space, Ship vessel, Position goal){
+		return shortcut(space, searchPath(space, vessel, goal).getPath(), goal);
+	} //end planPath
+	
+	/** Anytime search over the roadmap within this ship's share of the tick's planning budget **/
+	private AnytimeResult searchPath(Toroidal2DPhysics space, Ship vessel, Position goal){
+		if(roadmap == null){
+			updateRoadmap(space);
+		}
+		long deadline = System.nanoTime() + PLAN_BUDGET / Math.max(1, pilots.size());
+		Graph graph = roadmap.attach(space, vessel, goal);
+		graph.setLandmarks(landmarks); //landmark bounds are much tighter than straight lines around asteroid fields
+		try {
+			return pathEngine.findPathAnytime(graph, space, deadline);
+		} finally {
+			roadmap.detach(); //leave the roadmap clean for the next ship
+		}
+	} //end searchPath
+	
+	/** Same as planPath, reusing the path cached for this start cell and goal object while it is still valid **/
+	public Vertex[] planPath(Toroidal2DPhysics space, Ship vessel, AbstractObject goal){
+		if(pathCache == null){
+			updateRoadmap(space);
+		}
+		Vertex[] path = pathCache.get(vessel.getPosition(), goal.getId(), goal.getPosition());
+		if(path != null){
+			path = rebase(space, vessel, path, goal.getPosition());
+		}
+		if(path == null){
+			AnytimeResult result = searchPath(space, vessel, goal.getPosition());
+			path = shortcut(space, result.getPath(), goal.getPosition());
+			if(result.isComplete()){
+				pathCache.put(vessel.getPosition(), goal.getId(), path); //partial paths are only good for this tick
+			}
+		}
+		return path;
+	} //end planPath
+	
+	/** Fits a cached path to where this ship is now: starts it at the ship, joined to the farthest waypoint in clear sight, and ends it at the goal's current position. Null when no waypoint is in sight, so the caller replans **/
+	private Vertex[] rebase(Toroidal2DPhysics space, Ship vessel, Vertex[] path, Position goal){
+		Position current = vessel.getPosition();
+		int last = path.length - 1;
+		for(int next = last; next >= 1; next--){
+			Position waypoint = (next == last) ? goal : path[next].getPosition();
+			if(space.findShortestDistance(current, waypoint) > vessel.getRadius() &&
+					world.getObstructionGrid().isPathClear(space, current, waypoint, vessel.getRadius(), scratch)){
+				Vertex[] rebased = new Vertex[path.length - next + 1];
+				rebased[0] = new Vertex(current);
+				System.arraycopy(path, next, rebased, 1, last - next);
+				rebased[rebased.length - 1] = new Vertex(goal);
+				return rebased;
+			}
+		}
+		return null;
+	} //end rebase
+	
+	/** Drops the roadmap's zig-zags, so ships steer for the farthest waypoint they can see **/
+	private Vertex[] shortcut(Toroidal2DPhysics space, Vertex[] path, Position goal){
+		return smoother.shortcut(space, path, roadmap.getObstacleGrid(), goal);
+	} //end shortcut
+	
+	/** Getter for the path cache, to see whether it pays for itself **/
+	public PathCache getPathCache(){
+		return pathCache;
+	} //end getPathCache
+	
+	/** Navigates to an object, planning through the path cache **/
+	public MoveAction navigate(Toroidal2DPhysics space, Ship vessel, AbstractObject goal){
+		return navigate(space, vessel, goal.getPosition(), goal);
+	} //end navigate
+	
+	/** Navigates to a position that has no object to cache the path by **/
+	public MoveAction navigate(Toroidal2DPhysics space, Ship vessel, Position goal){
+		return navigate(space, vessel, goal, null);
+	} //end navigate
+	
+	/** Heads straight for the goal when the line is clear, otherwise for the next waypoint of a roadmap path **/
+	private MoveAction navigate(Toroidal2DPhysics space, Ship vessel, Position goal, AbstractObject target){
+		Position current = vessel.getPosition();
+		if(world.getObstructionGrid().isPathClear(space, current, goal, vessel.getRadius(), scratch)){
+			return optimalApproach(space, vessel, current, goal);
+		}
+		
+		Vertex[] path = (target != null) ? planPath(space, vessel, target) : planPath(space, vessel, goal);
+		if(path != null && path.length > 1){
+			return optimalApproach(space, vessel, current, path[1].getPosition());
+		}
+		return optimalApproach(space, vessel, current, goal); //no path found, fly direct
+	} //end navigate
+	
 	/** Returns list of purchases for all objects, purchase ability based on high level strategy **/
 	public Map<UUID, PurchaseTypes> getTeamPurchases(Toroidal2DPhysics space, ResourcePile funds, PurchaseCosts prices){
 		HashMap<UUID, PurchaseTypes> purchases = new HashMap<UUID, PurchaseTypes>();
@@ -145,21 +311,27 @@ public class SpaceCommand {
 			case EXPAND_EMPIRE:
 				//Buy base at appropriate frontier distance
 				if(prices.canAfford(PurchaseTypes.BASE, funds)){
+					double richest = -1;
 					for(ShipState ship : pilots.values()){
 						Ship vessel = (Ship)space.getObjectById(ship.getVessel());
 						
 						//Prioritize purchasing a base at a gold mine
 						if(vessel != null && ship.isGoldDigger() && this.goldmine != null
-								&& space.findShortestDistance(vessel.getPosition(), goldmine) <= 100){
+								&& space.findShortestDistance(vessel.getPosition(), goldmine) <= GOLDMINE_RADIUS){
 							purchases.clear();
 							purchases.put(vessel.getId(), PurchaseTypes.BASE);
 							this.goldmine = null;
 							return purchases;
 						}
 						
-						//Find place to purchase on frontier
-						if(vessel != null && purchases.size() < 1 && space.findShortestDistance(vessel.getPosition(), ship.getNearestBase(space, vessel, false, MIN_BASE_FUEL).getPosition()) >= FRONTIER){
-							purchases.put(vessel.getId(), PurchaseTypes.BASE);
+						//Find place to purchase on frontier, the richest surroundings win
+						if(vessel != null && space.findShortestDistance(vessel.getPosition(), ship.getNearestBase(space, world, vessel, false, MIN_BASE_FUEL).getPosition()) >= FRONTIER){
+							double nearby = (density == null) ? 0 : density.totalAround(vessel.getPosition(), GOLDMINE_RADIUS);
+							if(nearby > richest){
+								richest = nearby;
+								purchases.clear();
+								purchases.put(vessel.getId(), PurchaseTypes.BASE);
+							}
 						}
 					}
 					return purchases;
@@ -227,6 +399,7 @@ public class SpaceCommand {
 	/** Returns the basic mine actions for every ship and base **/
 	public HashMap<UUID, AbstractAction> getBasicActions(Toroidal2DPhysics space){
 		HashMap<UUID, AbstractAction> actions = new HashMap<UUID, AbstractAction>();
+		assignProspects(space);
 		
 		//Simplest strategy - prioritize mining for ships
 		for(ShipState state : pilots.values()){
@@ -270,13 +443,13 @@ public class SpaceCommand {
 		Ship vessel = (Ship)space.getObjectById(ship.getVessel());
 		
 		//Target nearest beacon
-		Beacon beacon = ship.getNearestBeacon(space, vessel, getTargets(ship.getVessel()));
+		Beacon beacon = ship.getNearestBeacon(space, world, vessel, reservations);
 		
 		//Check preconditions of action
 		if(ship.needsFuel(FUEL_COEF, vessel) && !isTargeted(beacon, ship.getVessel()) && beacon != null){
 			//Set effect
 			ship.setTarget(beacon);
-			return optimalApproach(space, vessel, vessel.getPosition(), beacon.getPosition());
+			return navigate(space, vessel, beacon);
 		}
 		return null;
 	} //end goToBeacon
@@ -286,13 +459,13 @@ public class SpaceCommand {
 		Ship vessel = (Ship)space.getObjectById(ship.getVessel());
 		
 		//Target nearest beacon or base
-		AbstractObject refuel = ship.getNearestRefuel(space, vessel,MIN_BASE_FUEL);
+		AbstractObject refuel = ship.getNearestRefuel(space, world, vessel, MIN_BASE_FUEL);
 		
 		//Check preconditions of action
 		if(ship.needsFuel(FUEL_COEF, vessel) && !isTargeted(refuel, ship.getVessel()) && refuel != null){
 			//Set effect
 			ship.setTarget(refuel);
-			return optimalApproach(space, vessel, vessel.getPosition(), refuel.getPosition());
+			return navigate(space, vessel, refuel);
 		}
 		return null;
 	} //end goToBeacon
@@ -302,13 +475,13 @@ public class SpaceCommand {
 		Ship vessel = (Ship)space.getObjectById(ship.getVessel());
 		
 		//Target nearest base
-		Base base = ship.getNearestBase(space, vessel, false, MIN_BASE_FUEL);
+		Base base = ship.getNearestBase(space, world, vessel, false, MIN_BASE_FUEL);
 		
 		//Check preconditions of action
 		if(ship.atMaxCargo(CARGO_CAPACITY, vessel) && base != null){
 			//Set effect
 			ship.setTarget(base);
-			return optimalApproach(space, vessel, vessel.getPosition(), base.getPosition());	
+			return navigate(space, vessel, base);	
 		}
 		return null;
 	} //end goToBase
@@ -317,32 +490,52 @@ public class SpaceCommand {
 	public MoveAction goToProspect(Toroidal2DPhysics space, ShipState ship){
 		Ship vessel = (Ship)space.getObjectById(ship.getVessel());
 		
-		//Target nearest prospect
-		Asteroid prospect = ship.getNearestProspect(space, vessel, getTargets(ship.getVessel()));
+		//Target the prospect assigned this tick, or the nearest one left if there was none
+		Asteroid prospect = prospects.getAssignment(ship.getVessel());
+		if(prospect == null){
+			prospect = ship.getNearestProspect(space, world, vessel, reservations);
+		}
 		
 		// precondition - does not need fuel, not at max capacity, asteroid exists
 		if(!ship.needsFuel(FUEL_COEF, vessel) && !ship.atMaxCargo(CARGO_CAPACITY, vessel) 
 				&& prospect != null){ // && !isTargeted(prospect, ship.getVessel().getId()
 			//Set effect
 			ship.setTarget(prospect);
-			return optimalApproach(space, vessel, vessel.getPosition(), prospect.getPosition());
+			return navigate(space, vessel, prospect);
 		}
 		return null;
 	} //end goToProspect
 	
+	/** Solves the assignment for every ship that will go prospecting this tick, same conditions as goToProspect **/
+	private void assignProspects(Toroidal2DPhysics space){
+		List<ShipState> batch = new ArrayList<ShipState>();
+		List<Ship> vessels = new ArrayList<Ship>();
+		for(ShipState ship : pilots.values()){
+			Ship vessel = (Ship)space.getObjectById(ship.getVessel());
+			if(vessel == null || ship.isDiamondChaser() || (strategy == Strategy.EXPAND_EMPIRE && ship.isGoldDigger())){
+				continue; //these ships have other plans
+			}
+			if(!ship.needsFuel(FUEL_COEF, vessel) && !ship.atMaxCargo(CARGO_CAPACITY, vessel)){
+				batch.add(ship);
+				vessels.add(vessel);
+			}
+		}
+		prospects.solve(space, world, batch, vessels, reservations);
+	} //end assignProspects
+	
 	/** Action for a ship to head to the HIGHEST value asteroid **/
 	public MoveAction goToDiamond(Toroidal2DPhysics space, ShipState ship){
 		Ship vessel = (Ship)space.getObjectById(ship.getVessel());
 		
 		//Target nearest prospect
-		Asteroid prospect = ship.getDiamond(space);
+		Asteroid prospect = ship.getDiamond(world);
 		
 		// precondition - does not need fuel, not at max capacity, asteroid exists
 		if(!ship.needsFuel(FUEL_COEF, vessel) && !ship.atMaxCargo(CARGO_CAPACITY, vessel) 
 				&& prospect != null){
 			//Set effect
 			ship.setTarget(prospect);
-			return optimalApproach(space, vessel, vessel.getPosition(), prospect.getPosition());
+			return navigate(space, vessel, prospect);
 		}
 		return null;
 	} //end goToDiamond
@@ -353,8 +546,17 @@ public class SpaceCommand {
 		Position goldmine = null;
 		if(this.goldmine == null){
 			goldmine = findGoldmine(space, ship);
+			goldmineFound = space.getCurrentTimestep();
 		} else {
-			return optimalApproach(space, vessel, vessel.getPosition(), this.goldmine);
+			if(space.getCurrentTimestep() - goldmineFound >= GOLDMINE_REFRESH){
+				//follows the field as it drifts, without jumping between equal regions every tick
+				Position refreshed = findGoldmine(space, ship);
+				goldmineFound = space.getCurrentTimestep();
+				if(refreshed != null){
+					this.goldmine = refreshed;
+				}
+			}
+			return navigate(space, vessel, this.goldmine);
 		}
 		
 		
@@ -362,7 +564,7 @@ public class SpaceCommand {
 		if(goldmine != null && ship.isGoldDigger() && !ship.needsFuel(FUEL_COEF, vessel)){
 			this.goldmine = goldmine;
 			ship.setTarget(new Beacon(goldmine)); //pseudo object for graphics
-			return optimalApproach(space, vessel, vessel.getPosition(), goldmine);	
+			return navigate(space, vessel, goldmine);	
 		}
 		this.goldmine = null; //reset gold mind to null if not found
 		return null;
@@ -389,19 +591,13 @@ public class SpaceCommand {
 	
 	/** Determines if the object is targeted by any of the ships BESIDES the given ship **/
 	public boolean isTargeted(AbstractObject object, UUID shipId){
-		return getTargets(shipId).contains(object);
+		return reservations.isClaimedByOthers(object, pilots.get(shipId));
 	} //end isTargeted
 	
-	/** Get targets of all ships besides given ship ID **/
-	public Set<AbstractObject> getTargets(UUID shipId){
-		Set<AbstractObject> targets = new HashSet<AbstractObject>();
-		for(ShipState pilot : pilots.values()){
-			if(pilot.getTarget() != null && !pilot.getVessel().equals(shipId)){ 
-				targets.add(pilot.getTarget());
-			}
-		}
-		return targets;
-	} //end getTargets
+	/** Getter for the index of the pilots' targets **/
+	public TargetReservations getReservations(){
+		return reservations;
+	} //end getReservations
 
 	/** Returns graphics for all the ships **/
 	public HashSet<SpacewarGraphics> getGraphics(){
@@ -417,122 +613,64 @@ public class SpaceCommand {
 	
 	/** Updates the graphics on the ships **/
 	public void updateGraphics(Toroidal2DPhysics space){
+		if(!Rendering.isEnabled()) return; //nobody is watching
+		
 		for(ShipState ship : pilots.values()){
 			ship.setGraphics(space, (Ship)space.getObjectById(ship.getVessel()));
 		}
 	} //end updateGraphics
 	
-	/** Uses K-means clustering to find a location with high resource density **/
+	/** Uses K-means clustering to find the regions holding asteroids, then the density map's window max within each **/
 	public Position findGoldmine(Toroidal2DPhysics space, ShipState vessel){
-		Random rand = new Random();
-		List<Asteroid> prospects = vessel.getMinableAsteroids(space); //maybe only consider stationary asteroids?
-		int[] ptok = new int[prospects.size()];	//links prospects to their closest centroid (k)
+		Asteroid[] prospects = world.getMinable(); //maybe only consider stationary asteroids?
+		if(prospects.length == 0){
+			return null;
+		}
+		if(goldmineClusters == null){
+			goldmineClusters = new KMeansEngine(space.getWidth(), space.getHeight(), GOLDMINE_CLUSTERS, new Random());
+		}
 		
+		double[] x = new double[prospects.length];
+		double[] y = new double[prospects.length];
+		for(int i = 0; i < prospects.length; i++){
+			x[i] = prospects[i].getPosition().getX();
+			y[i] = prospects[i].getPosition().getY();
+		}
+		goldmineClusters.cluster(x, y, prospects.length); //warm starts from the last search's centroids
 		
-		double minDist;
-		double dist;
-		int count;
-		Vector2D dxy;
-		boolean changed = true;
-		int MAX_ITER = 100;
-		int iter = 0;
-		Position bestest = null;
-		double mostest = Double.NEGATIVE_INFINITY;
-
+		//extent of each cluster is its farthest asteroid, so the cluster's window max is searched within it
+		int k = goldmineClusters.getK();
+		double[] total = new double[k];
+		double[] extent = new double[k];
+		Arrays.fill(extent, 1);
+		for(int i = 0; i < prospects.length; i++){
+			int c = goldmineClusters.getAssignment(i);
+			double dx = x[i] - goldmineClusters.getCentroidX(c);
+			double dy = y[i] - goldmineClusters.getCentroidY(c);
+			dx -= space.getWidth() * Math.rint(dx / space.getWidth()); //wrapped offsets
+			dy -= space.getHeight() * Math.rint(dy / space.getHeight());
+			total[c] += prospects[i].getResources().getTotal();
+			extent[c] = Math.max(extent[c], Math.sqrt(dx * dx + dy * dy));
+		}
 		
-		int k = 9;
-			iter = 0;
-			changed = true;
-			List<Position> K = new ArrayList<Position>(k);				//K mean positions
-			List<ArrayList<Asteroid>> clusters = new ArrayList<ArrayList<Asteroid>>(k);		//keep track of cluster assignments K index : [prospect indexes]
-
-			for (int i =0; i<k; i++){
-				K.add(space.getRandomFreeLocation(rand, 0));			
-			}
-
-			for (int i = 0; i < k; i ++){
-				clusters.add(new ArrayList<Asteroid>());
-			}
-
-			while (changed && iter < MAX_ITER){
-				iter++;
-				changed = false;			//reset change flag
-
-				for (int j = 0; j < prospects.size(); j++){
-					minDist = Double.POSITIVE_INFINITY;
-
-					for (int i = 0; i < K.size(); i++){
-						dist = space.findShortestDistance(prospects.get(j).getPosition(), K.get(i));
-
-						if (dist < minDist){
-							minDist = dist;
-							ptok[j] = i;
-						}
-					}
-				}
-				
-				for (ArrayList<Asteroid> cluster : clusters){
-					cluster.clear();
-				}
-
-				for (int i = 0; i < ptok.length; i++){
-					clusters.get(ptok[i]).add(prospects.get(i));
-				}
-
-				for (int i = 0; i < clusters.size(); i++){
-					count = clusters.get(i).size();
-
-					if (count != 0){
-						dxy = new Vector2D();
-
-						for (Asteroid j : clusters.get(i)){
-							dxy = dxy.add(space.findShortestDistanceVector(K.get(i), j.getPosition()));
-						}
-
-						dxy = dxy.divide(count);			//average displacement from centroid
-
-						//System.out.println("Average displacement: " + dxy.getMagnitude() + " @ iter: " + iter);
-
-						if (dxy.getMagnitude() > .0000001){		//if centroid is not close enough to center, recluster
-							changed = true;				
-							K.get(i).setX(K.get(i).getX() + dxy.getXValue());
-							K.get(i).setY(K.get(i).getY() + dxy.getYValue());
-						}
-					}
-				}
-			
-			//return centroid of cluster with highest resource density
-			double total = 0;
-			double most = Double.NEGATIVE_INFINITY;
-			double extent = 0;
-			double fromCenter;
-			Position best = K.get(0);		//just init
-
-			for (ArrayList<Asteroid> cluster : clusters){
-				total = 0; 
-				extent = 1;
-
-				for (Asteroid ast : cluster){
-					total+=ast.getResources().getTotal();
-					fromCenter = space.findShortestDistance(ast.getPosition(), K.get(clusters.indexOf(cluster)));
-					if (extent < fromCenter){
-						extent = fromCenter;
-					}
-				}
-
-				total/= extent;			//resource density of cluster using the farthest node (think of the area of an encompassing circle defined by extent as the radius, without the extra math)
-
-				if (total > most){
-					most = total;
-					best = K.get(clusters.indexOf(cluster));
-				}
+		//return the densest window over all clusters
+		if(density == null){
+			updateDensity(space);
+		}
+		Position best = null;
+		double most = 0;
+		for(int c = 0; c < k; c++){
+			if(total[c] <= 0){
+				continue;
 			}
-			if (mostest < most){
-				bestest = best;
-				mostest = total;
+			Position centroid = new Position(goldmineClusters.getCentroidX(c), goldmineClusters.getCentroidY(c));
+			Position densest = density.densest(centroid, extent[c], GOLDMINE_RADIUS);
+			double nearby = (densest == null) ? 0 : density.totalAround(densest, GOLDMINE_RADIUS);
+			if(nearby > most){
+				most = nearby;
+				best = densest;
 			}
 		}
-
-		return bestest;
+		return best;
 	} //end findGoldMine
 } //end SpaceCommand class
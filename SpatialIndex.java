@@ -0,0 +1,214 @@
+package stan5674;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import spacesettlers.objects.AbstractObject;
+import spacesettlers.simulator.Toroidal2DPhysics;
+import spacesettlers.utilities.Position;
+
+/** Wrap-aware uniform grid over a fixed set of objects, rebuilt once per tick.
+ * Nearest and within-radius queries search outward ring by ring from the query cell
+ * and stop as soon as no unvisited ring can hold anything closer **/
+public class SpatialIndex<T extends AbstractObject> {
+	/** Filter applied to candidates during a nearest search **/
+	public interface Filter<T> {
+		boolean accept(T object);
+	}
+
+	/** Default edge length of a cell **/
+	public static final double DEFAULT_CELL_SIZE = 100;
+
+	/** Grid geometry **/
+	private final Toroidal2DPhysics space;
+	private final int cols;
+	private final int rows;
+	private final double cellWidth;
+	private final double cellHeight;
+	private final int maxRing;
+
+	/** Objects sorted by cell, cellStart[c] .. cellStart[c+1] are the objects of cell c **/
+	private final Object[] items;
+	private final int[] cellStart;
+
+	/** Per-query stamps so wrapped rings never visit a cell twice **/
+	private final int[] visited;
+	private int stamp;
+
+	/** Builds an index over the given objects with the default cell size **/
+	public SpatialIndex(Toroidal2DPhysics space, Collection<? extends T> objects){
+		this(space, objects, DEFAULT_CELL_SIZE);
+	} //end SpatialIndex
+
+	/** Builds an index over the given objects **/
+	public SpatialIndex(Toroidal2DPhysics space, Collection<? extends T> objects, double cellSize){
+		this.space = space;
+		this.cols = Math.max(1, (int)(space.getWidth() / cellSize));
+		this.rows = Math.max(1, (int)(space.getHeight() / cellSize));
+		this.cellWidth = (double)space.getWidth() / cols;
+		this.cellHeight = (double)space.getHeight() / rows;
+		this.maxRing = Math.max(cols, rows) / 2 + 1;
+		this.visited = new int[cols * rows];
+		this.stamp = 0;
+
+		//Counting sort of the objects into their cells
+		int[] cellOf = new int[objects.size()];
+		this.cellStart = new int[cols * rows + 1];
+		int n = 0;
+		for (T object : objects){
+			cellOf[n] = cellOf(object.getPosition());
+			cellStart[cellOf[n] + 1]++;
+			n++;
+		}
+		for (int c = 0; c < cols * rows; c++){
+			cellStart[c + 1] += cellStart[c];
+		}
+		this.items = new Object[n];
+		int[] fill = new int[cols * rows];
+		n = 0;
+		for (T object : objects){
+			int c = cellOf[n++];
+			items[cellStart[c] + fill[c]++] = object;
+		}
+	} //end SpatialIndex
+
+	/** Number of indexed objects **/
+	public int size(){
+		return items.length;
+	} //end size
+
+	/** Returns the closest object to the position, or null if there is none **/
+	public T nearest(Position location){
+		return nearest(location, null);
+	} //end nearest
+
+	/** Returns the closest object accepted by the filter, or null if there is none.
+	 * The filter is only consulted for objects closer than the best one found so far **/
+	@SuppressWarnings("unchecked")
+	public T nearest(Position location, Filter<? super T> filter){
+		if (items.length == 0) return null;
+
+		int cx = column(location.getX());
+		int cy = row(location.getY());
+		double ringWidth = Math.min(cellWidth, cellHeight);
+		double shortest = Double.POSITIVE_INFINITY;
+		T nearest = null;
+		stamp++;
+
+		for (int r = 0; r <= maxRing; r++){
+			for (int dy = -r; dy <= r; dy++){
+				for (int dx = -r; dx <= r; dx++){
+					if (Math.abs(dx) != r && Math.abs(dy) != r) continue; //only the ring itself
+					int c = cell(cx + dx, cy + dy);
+					if (visited[c] == stamp) continue;
+					visited[c] = stamp;
+
+					for (int i = cellStart[c]; i < cellStart[c + 1]; i++){
+						T object = (T) items[i];
+						double dist = space.findShortestDistance(location, object.getPosition());
+						if (dist < shortest && (filter == null || filter.accept(object))){
+							shortest = dist;
+							nearest = object;
+						}
+					}
+				}
+			}
+			//everything outside ring r is at least r cells away
+			if (shortest <= r * ringWidth) break;
+		}
+		return nearest;
+	} //end nearest
+
+	/** Returns up to k objects accepted by the filter, closest first.  Like nearest, the
+	 * filter is only consulted for objects closer than the k-th best found so far **/
+	@SuppressWarnings("unchecked")
+	public List<T> kNearest(Position location, int k, Filter<? super T> filter){
+		List<T> found = new ArrayList<T>(Math.max(0, k));
+		if (items.length == 0 || k <= 0) return found;
+
+		int cx = column(location.getX());
+		int cy = row(location.getY());
+		double ringWidth = Math.min(cellWidth, cellHeight);
+		double[] distances = new double[k];
+		stamp++;
+
+		for (int r = 0; r <= maxRing; r++){
+			for (int dy = -r; dy <= r; dy++){
+				for (int dx = -r; dx <= r; dx++){
+					if (Math.abs(dx) != r && Math.abs(dy) != r) continue; //only the ring itself
+					int c = cell(cx + dx, cy + dy);
+					if (visited[c] == stamp) continue;
+					visited[c] = stamp;
+
+					for (int i = cellStart[c]; i < cellStart[c + 1]; i++){
+						T object = (T) items[i];
+						double dist = space.findShortestDistance(location, object.getPosition());
+						if (found.size() == k && dist >= distances[k - 1]) continue;
+						if (filter != null && !filter.accept(object)) continue;
+
+						//insertion into the sorted list, dropping the farthest when full
+						if (found.size() == k) found.remove(k - 1);
+						int slot = found.size();
+						while (slot > 0 && distances[slot - 1] > dist){
+							distances[slot] = distances[slot - 1];
+							slot--;
+						}
+						distances[slot] = dist;
+						found.add(slot, object);
+					}
+				}
+			}
+			//everything outside ring r is at least r cells away
+			if (found.size() == k && distances[k - 1] <= r * ringWidth) break;
+		}
+		return found;
+	} //end kNearest
+
+	/** Returns every object whose center lies within the radius of the position **/
+	@SuppressWarnings("unchecked")
+	public List<T> withinRadius(Position location, double radius){
+		List<T> found = new ArrayList<T>();
+		int cx = column(location.getX());
+		int cy = row(location.getY());
+		int rx = Math.min((int)Math.ceil(radius / cellWidth), cols / 2 + 1);
+		int ry = Math.min((int)Math.ceil(radius / cellHeight), rows / 2 + 1);
+		stamp++;
+
+		for (int dy = -ry; dy <= ry; dy++){
+			for (int dx = -rx; dx <= rx; dx++){
+				int c = cell(cx + dx, cy + dy);
+				if (visited[c] == stamp) continue;
+				visited[c] = stamp;
+
+				for (int i = cellStart[c]; i < cellStart[c + 1]; i++){
+					T object = (T) items[i];
+					if (space.findShortestDistance(location, object.getPosition()) <= radius){
+						found.add(object);
+					}
+				}
+			}
+		}
+		return found;
+	} //end withinRadius
+
+	/** Wrapped grid column of an x coordinate **/
+	private int column(double x){
+		return Math.floorMod((int)Math.floor(x / cellWidth), cols);
+	} //end column
+
+	/** Wrapped grid row of a y coordinate **/
+	private int row(double y){
+		return Math.floorMod((int)Math.floor(y / cellHeight), rows);
+	} //end row
+
+	/** Cell index of a (possibly unwrapped) column and row **/
+	private int cell(int col, int row){
+		return Math.floorMod(row, rows) * cols + Math.floorMod(col, cols);
+	} //end cell
+
+	/** Cell index of a position **/
+	private int cellOf(Position position){
+		return row(position.getY()) * cols + column(position.getX());
+	} //end cellOf
+} //end SpatialIndex class
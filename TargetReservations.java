@@ -0,0 +1,55 @@
+package stan5674;
+
+import java.util.HashMap;
+import java.util.UUID;
+
+import spacesettlers.objects.AbstractObject;
+
+/** Live index of the objects the pilots are headed for, keyed by object id.
+ * Pilots report every change of target through ShipState.setTarget, so claim checks
+ * are a single lookup instead of collecting every other pilot's target **/
+public class TargetReservations {
+	/** Number of pilots targeting each object, objects nobody targets are not stored **/
+	private final HashMap<UUID, int[]> claims;
+
+	/** Default constructor, no object is claimed **/
+	public TargetReservations(){
+		this.claims = new HashMap<UUID, int[]>();
+	} //end TargetReservations
+
+	/** Moves one claim from the old target to the new one, either may be null **/
+	void transfer(AbstractObject from, AbstractObject to){
+		if(from != null && to != null && from.getId().equals(to.getId())){
+			return; //same object, nothing changes
+		}
+		if(from != null){
+			int[] count = claims.get(from.getId());
+			if(count != null && --count[0] == 0){
+				claims.remove(from.getId());
+			}
+		}
+		if(to != null){
+			int[] count = claims.get(to.getId());
+			if(count == null){
+				claims.put(to.getId(), new int[] {1});
+			} else {
+				count[0]++;
+			}
+		}
+	} //end transfer
+
+	/** Number of pilots targeting the object **/
+	public int getClaims(AbstractObject object){
+		int[] count = claims.get(object.getId());
+		return (count == null) ? 0 : count[0];
+	} //end getClaims
+
+	/** Determines if any pilot BESIDES the given one targets the object **/
+	public boolean isClaimedByOthers(AbstractObject object, ShipState pilot){
+		if(object == null){
+			return false;
+		}
+		int own = (pilot != null && pilot.isTarget(object)) ? 1 : 0;
+		return getClaims(object) > own;
+	} //end isClaimedByOthers
+} //end TargetReservations class
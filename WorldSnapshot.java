@@ -0,0 +1,134 @@
+package stan5674;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import spacesettlers.objects.AbstractObject;
+import spacesettlers.objects.Asteroid;
+import spacesettlers.objects.Base;
+import spacesettlers.objects.Beacon;
+import spacesettlers.objects.Ship;
+import spacesettlers.simulator.Toroidal2DPhysics;
+import stan5674.astar.ObstacleGrid;
+
+/** Immutable view of the world for a single tick, built once and shared by every ship decision.
+ * Holds the preprocessed partitions of the objects in space plus their spatial indices **/
+public class WorldSnapshot {
+	/** Tick the snapshot was taken on **/
+	private final int timestep;
+	private final String teamName;
+
+	/** Ready-made partitions of the objects in space **/
+	private final Asteroid[] minable;
+	private final Asteroid[] unminable;
+	private final Base[] bases;
+	private final Beacon[] beacons;
+	private final Set<AbstractObject> obstructions;
+	private final ObstacleGrid obstructionGrid;
+
+	/** Spatial indices over the partitions **/
+	private final SpatialIndex<Asteroid> prospectIndex;
+	private final SpatialIndex<Base> baseIndex;
+	private final SpatialIndex<Beacon> beaconIndex;
+
+	/** Partitions the objects of space in a single pass **/
+	WorldSnapshot(Toroidal2DPhysics space, String teamName){
+		this.timestep = space.getCurrentTimestep();
+		this.teamName = teamName;
+
+		List<Asteroid> minableList = new ArrayList<Asteroid>();
+		List<Asteroid> unminableList = new ArrayList<Asteroid>();
+		for (Asteroid asteroid : space.getAsteroids()){
+			if (asteroid.isMineable()){
+				minableList.add(asteroid);
+			} else {
+				unminableList.add(asteroid);
+			}
+		}
+
+		List<Base> baseList = new ArrayList<Base>();
+		for (Base base : space.getBases()){
+			if (base.getTeamName().equalsIgnoreCase(teamName)){
+				baseList.add(base);
+			}
+		}
+
+		this.minable = minableList.toArray(new Asteroid[minableList.size()]);
+		this.unminable = unminableList.toArray(new Asteroid[unminableList.size()]);
+		this.bases = baseList.toArray(new Base[baseList.size()]);
+		this.beacons = space.getBeacons().toArray(new Beacon[space.getBeacons().size()]);
+		this.obstructions = Collections.unmodifiableSet(new HashSet<AbstractObject>(unminableList));
+		
+		//broadphase inflated enough for any of our ships to query with its own radius
+		int shipRadius = 0;
+		for (Ship ship : space.getShips()){
+			if (ship.getTeamName().equalsIgnoreCase(teamName)){
+				shipRadius = Math.max(shipRadius, ship.getRadius());
+			}
+		}
+		this.obstructionGrid = new ObstacleGrid(space, unminableList, shipRadius);
+
+		this.prospectIndex = new SpatialIndex<Asteroid>(space, minableList);
+		this.baseIndex = new SpatialIndex<Base>(space, baseList);
+		this.beaconIndex = new SpatialIndex<Beacon>(space, Arrays.asList(beacons));
+	} //end WorldSnapshot
+
+	/** Getter for the tick of the snapshot **/
+	public int getTimestep(){
+		return timestep;
+	} //end getTimestep
+
+	/** Getter for the team the snapshot was taken for **/
+	public String getTeamName(){
+		return teamName;
+	} //end getTeamName
+
+	/** Asteroids with resources - do not modify **/
+	public Asteroid[] getMinable(){
+		return minable;
+	} //end getMinable
+
+	/** Asteroids without resources - do not modify **/
+	public Asteroid[] getUnminable(){
+		return unminable;
+	} //end getUnminable
+
+	/** Unminable asteroids as a read-only obstruction set for path checks **/
+	public Set<AbstractObject> getObstructions(){
+		return obstructions;
+	} //end getObstructions
+
+	/** Segment broadphase over the unminable asteroids **/
+	public ObstacleGrid getObstructionGrid(){
+		return obstructionGrid;
+	} //end getObstructionGrid
+
+	/** Bases belonging to our team - do not modify **/
+	public Base[] getBases(){
+		return bases;
+	} //end getBases
+
+	/** Beacons in space - do not modify **/
+	public Beacon[] getBeacons(){
+		return beacons;
+	} //end getBeacons
+
+	/** Spatial index over the minable asteroids **/
+	public SpatialIndex<Asteroid> getProspectIndex(){
+		return prospectIndex;
+	} //end getProspectIndex
+
+	/** Spatial index over our bases **/
+	public SpatialIndex<Base> getBaseIndex(){
+		return baseIndex;
+	} //end getBaseIndex
+
+	/** Spatial index over the beacons **/
+	public SpatialIndex<Beacon> getBeaconIndex(){
+		return beaconIndex;
+	} //end getBeaconIndex
+} //end WorldSnapshot class
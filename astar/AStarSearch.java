@@ -1,8 +1,14 @@
 package stan5674.astar;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import spacesettlers.objects.AbstractObject;
 import spacesettlers.objects.Asteroid;
@@ -24,9 +30,10 @@ public class AStarSearch  {
 	/**
 	 * Fudge factor keeps you from going too close to obstacles
 	 */
-	private static final int fudge_factor = 20;
-	private static final int numGraphNodes = 200;
-	private static final double maxNodeDistance = 200;
+	static final int fudge_factor = 20;
+	static final int numGraphNodes = 200;
+	static final int maxSampleAttempts = numGraphNodes * 4;
+	static final double maxNodeDistance = 200;
 	
 
 	/**
@@ -53,6 +60,25 @@ public class AStarSearch  {
 		return true;
 	}
 	
+	/**
+	 * Same as inFreeSpace as a bit lookup in the occupancy raster, exact only in boundary cells
+	 * @param occupancy raster of the asteroids grown by fudge_factor
+	 */
+	public static boolean inFreeSpace(Position pos, Toroidal2DPhysics state, OccupancyGrid occupancy) {
+		return occupancy.isFree(state, pos);
+	}
+
+	/**
+	 * Places up to numGraphNodes free space vertices with a bounded number of attempts
+	 * @return the sampler, holding the positions placed and how many of numGraphNodes landed
+	 */
+	static FreeSpaceSampler sampleFreeSpace(Toroidal2DPhysics state, Random random) {
+		OccupancyGrid asteroids = new OccupancyGrid(state, state.getAsteroids());
+		FreeSpaceSampler sampler = new FreeSpaceSampler(random);
+		sampler.sample(state, asteroids, numGraphNodes, maxSampleAttempts);
+		return sampler;
+	}
+	
 	/**
 	 * Is the space free from position1 to position2 alone a line?
 	 * @param position1
@@ -62,10 +88,33 @@ public class AStarSearch  {
 	 */
 
 	public static boolean isFreeLine(Position position1, Position position2, Toroidal2DPhysics state) {
+		return isFreeLine(position1, position2, state, state.getAsteroids());
+	}
+
+	/**
+	 * Is the space free from position1 to position2 along a line?  Only the obstacles the
+	 * broadphase finds along the line are tested.
+	 * @param position1
+	 * @param position2
+	 * @param state
+	 * @param grid broadphase over the asteroids, inflated by at least fudge_factor
+	 * @return
+	 */
+	public static boolean isFreeLine(Position position1, Position position2, Toroidal2DPhysics state, ObstacleGrid grid) {
+		if (grid.getInflation() < fudge_factor) {
+			return isFreeLine(position1, position2, state);
+		}
+		Set<AbstractObject> candidates = new HashSet<AbstractObject>();
+		grid.collect(position1, position2, candidates);
+		return isFreeLine(position1, position2, state, candidates);
+	}
+
+	private static boolean isFreeLine(Position position1, Position position2, Toroidal2DPhysics state, 
+			Collection<? extends AbstractObject> obstacles) {
 		// get a vector from location 1 to location 2
 		Vector2D line = state.findShortestDistanceVector(position1, position2);
 
-		for (Asteroid asteroid : state.getAsteroids()) {
+		for (AbstractObject asteroid : obstacles) {
 			// now find the distance to the obstacle (vector pointing from location 1 to the obstacle)
 			Vector2D obstacleVec = state.findShortestDistanceVector(position1, asteroid.getPosition());
 
@@ -97,6 +146,16 @@ public class AStarSearch  {
 	 */
 	public static Graph createGraphToGoalWithBeacons(Toroidal2DPhysics state, Ship myShip, 
 			Position goalPosition, Random random) {
+		return createGraphToGoalWithBeacons(state, myShip, goalPosition, random, false);
+	}
+
+	/**
+	 * creates a graph of random locations plus the starting position and each of the beacons.
+	 * In parallel mode the vertex pairs are checked on the fork-join pool; the resulting
+	 * graph is the same as the serial build.
+	 */
+	public static Graph createGraphToGoalWithBeacons(Toroidal2DPhysics state, Ship myShip, 
+			Position goalPosition, Random random, boolean parallel) {
 		// where am I?
 		Position startPos = myShip.getPosition();
 		
@@ -121,17 +180,12 @@ public class AStarSearch  {
 		goal.setGoal();
 		graph.addVertex(goal);
 
-		Position position;
-		// add a random set of vertices that are not inside obstacles
-		for (int v = 0; v < numGraphNodes; v++) {
-			double newX = random.nextFloat() * state.getWidth();
-			double newY = random.nextFloat() * state.getHeight();
-			position = new Position(newX, newY);
-			
-			if (inFreeSpace(position, state)) {
-				graph.addVertex(new Vertex(position));
-			} else {v--;}
+		// add a well spread set of vertices that are not inside obstacles
+		FreeSpaceSampler sampler = sampleFreeSpace(state, random);
+		for (Position position : sampler.getPositions()) {
+			graph.addVertex(new Vertex(position));
 		}
+		graph.setNumSampledVertices(sampler.getPlaced());
 		
 		// now connect all vertices that are within a specified radius and don't go through an obstacle
 		Set<AbstractObject> obstaclesForGraph = new HashSet<AbstractObject>();
@@ -150,12 +204,27 @@ public class AStarSearch  {
 			}
 		}
 		
-		for (Vertex vertex1 : graph.getVertices()) {
-			for (Vertex vertex2 : graph.getVertices()) {
+		// only vertices in neighbouring cells can be close enough to connect, and only
+		// obstacles in the cells along an edge can block it
+		Vertex[] vertices = graph.getVertices().toArray(new Vertex[graph.getVertices().size()]);
+		VertexBuckets buckets = new VertexBuckets(state, positionsOf(vertices), maxNodeDistance);
+		ObstacleGrid obstacleGrid = new ObstacleGrid(state, obstaclesForGraph, fudge_factor);
+
+		if (parallel) {
+			connectVerticesInParallel(state, graph, vertices, buckets, obstacleGrid);
+			return graph;
+		}
+		
+		Set<AbstractObject> scratch = new HashSet<AbstractObject>();
+		int[] candidates = new int[vertices.length];
+		for (Vertex vertex1 : vertices) {
+			int numCandidates = buckets.candidates(vertex1.getPosition(), candidates);
+			for (int c = 0; c < numCandidates; c++) {
+				Vertex vertex2 = vertices[candidates[c]];
 				double distance = state.findShortestDistance(vertex1.getPosition(), vertex2.getPosition());
 				if (distance > 0 && distance < maxNodeDistance && 
-						state.isPathClearOfObstructions(vertex1.getPosition(), vertex2.getPosition(), 
-								obstaclesForGraph, fudge_factor)) {
+						obstacleGrid.isPathClear(state, vertex1.getPosition(), vertex2.getPosition(), 
+								fudge_factor, scratch)) {
 					Vector2D lineVec = state.findShortestDistanceVector(vertex1.getPosition(), vertex2.getPosition());
 					Edge edge = new Edge(vertex1, vertex2, lineVec);
 					vertex1.addEdge(edge);
@@ -168,4 +237,201 @@ public class AStarSearch  {
 		return graph;
 	}
 
+	static Position[] positionsOf(Vertex[] vertices) {
+		Position[] positions = new Position[vertices.length];
+		for (int v = 0; v < vertices.length; v++) {
+			positions[v] = vertices[v].getPosition();
+		}
+		return positions;
+	}
+
+	/**
+	 * A pair of vertex indices that passed the edge checks
+	 */
+	private static class Connection {
+		final int from, to;
+		final Vector2D lineVec;
+
+		Connection(int from, int to, Vector2D lineVec) {
+			this.from = from;
+			this.to = to;
+			this.lineVec = lineVec;
+		}
+	}
+
+	/**
+	 * Checks the vertex pairs of a range of first vertices.  Each worker collects its own
+	 * connections, and results are joined in vertex order so the merge is deterministic.
+	 */
+	private static class ConnectTask extends RecursiveTask<List<Connection>> {
+		private static final long serialVersionUID = 1L;
+		private static final int rowsPerTask = 8;
+
+		private final Toroidal2DPhysics state;
+		private final Vertex[] vertices;
+		private final VertexBuckets buckets;
+		private final ObstacleGrid obstacles;
+		private final int low, high;
+
+		ConnectTask(Toroidal2DPhysics state, Vertex[] vertices, VertexBuckets buckets, ObstacleGrid obstacles, 
+				int low, int high) {
+			this.state = state;
+			this.vertices = vertices;
+			this.buckets = buckets;
+			this.obstacles = obstacles;
+			this.low = low;
+			this.high = high;
+		}
+
+		@Override
+		protected List<Connection> compute() {
+			if (high - low > rowsPerTask) {
+				int middle = (low + high) >>> 1;
+				ConnectTask left = new ConnectTask(state, vertices, buckets, obstacles, low, middle);
+				ConnectTask right = new ConnectTask(state, vertices, buckets, obstacles, middle, high);
+				right.fork();
+				List<Connection> connections = left.compute();
+				connections.addAll(right.join());
+				return connections;
+			}
+
+			List<Connection> connections = new ArrayList<Connection>();
+			Set<AbstractObject> scratch = new HashSet<AbstractObject>();
+			int[] candidates = new int[vertices.length];
+			for (int i = low; i < high; i++) {
+				int numCandidates = buckets.candidates(vertices[i].getPosition(), candidates);
+				for (int c = 0; c < numCandidates; c++) {
+					int j = candidates[c];
+					double distance = state.findShortestDistance(vertices[i].getPosition(), vertices[j].getPosition());
+					if (distance > 0 && distance < maxNodeDistance && 
+							obstacles.isPathClear(state, vertices[i].getPosition(), vertices[j].getPosition(), 
+									fudge_factor, scratch)) {
+						connections.add(new Connection(i, j, 
+								state.findShortestDistanceVector(vertices[i].getPosition(), vertices[j].getPosition())));
+					}
+				}
+			}
+			return connections;
+		}
+	}
+
+	/**
+	 * Runs the vertex pair checks on the fork-join pool, then adds the edges on the calling
+	 * thread in the same order as the serial loop
+	 */
+	private static void connectVerticesInParallel(Toroidal2DPhysics state, Graph graph, Vertex[] vertices, 
+			VertexBuckets buckets, ObstacleGrid obstacles) {
+		List<Connection> connections = ForkJoinPool.commonPool().invoke(
+				new ConnectTask(state, vertices, buckets, obstacles, 0, vertices.length));
+
+		for (Connection connection : connections) {
+			Vertex vertex1 = vertices[connection.from];
+			Vertex vertex2 = vertices[connection.to];
+			Edge edge = new Edge(vertex1, vertex2, connection.lineVec);
+			vertex1.addEdge(edge);
+			vertex2.addEdge(edge);
+			graph.addEdge(edge);
+		}
+	}
+
+	/**
+	 * creates the same kind of graph as createGraphToGoalWithBeacons, but stores it in the compact
+	 * array backend without allocating Vertex or Edge objects for the graph itself
+	 */
+	public static CompactGraph createCompactGraphToGoalWithBeacons(Toroidal2DPhysics state, Ship myShip, 
+			Position goalPosition, Random random) {
+		Set<Beacon> beacons = state.getBeacons();
+		Position[] positions = new Position[numGraphNodes + beacons.size() + 2];
+		int numVertices = 0;
+		CompactGraph graph = new CompactGraph(positions.length);
+
+		// add the start, the beacons and the goal
+		positions[numVertices++] = myShip.getPosition();
+		graph.addVertex(myShip.getPosition().getX(), myShip.getPosition().getY(), true, false);
+		for (Beacon beacon : beacons) {
+			positions[numVertices++] = beacon.getPosition();
+			graph.addVertex(beacon.getPosition().getX(), beacon.getPosition().getY(), false, false);
+		}
+		positions[numVertices++] = goalPosition;
+		graph.addVertex(goalPosition.getX(), goalPosition.getY(), false, true);
+
+		// add a well spread set of vertices that are not inside obstacles
+		FreeSpaceSampler sampler = sampleFreeSpace(state, random);
+		for (Position position : sampler.getPositions()) {
+			positions[numVertices++] = position;
+			graph.addVertex(position.getX(), position.getY(), false, false);
+		}
+		graph.setNumSampledVertices(sampler.getPlaced());
+
+		Set<AbstractObject> obstaclesForGraph = new HashSet<AbstractObject>();
+		for (Asteroid asteroid : state.getAsteroids()) {
+			if (!asteroid.getPosition().equals(goalPosition)) {
+				obstaclesForGraph.add(asteroid);
+			}
+		}
+		for (Base base : state.getBases()) {
+			if (!base.getTeamName().equalsIgnoreCase(myShip.getTeamName())) {
+				obstaclesForGraph.add(base);
+			}
+		}
+
+		// edges are undirected, so each pair only needs checking once
+		positions = Arrays.copyOf(positions, numVertices);
+		VertexBuckets buckets = new VertexBuckets(state, positions, maxNodeDistance);
+		ObstacleGrid obstacleGrid = new ObstacleGrid(state, obstaclesForGraph, fudge_factor);
+		Set<AbstractObject> scratch = new HashSet<AbstractObject>();
+		int[] candidates = new int[numVertices];
+		for (int i = 0; i < numVertices; i++) {
+			int numCandidates = buckets.candidates(positions[i], candidates);
+			for (int c = 0; c < numCandidates; c++) {
+				int j = candidates[c];
+				if (j <= i) {
+					continue;
+				}
+				double distance = state.findShortestDistance(positions[i], positions[j]);
+				if (distance > 0 && distance < maxNodeDistance && 
+						obstacleGrid.isPathClear(state, positions[i], positions[j], fudge_factor, scratch)) {
+					graph.addEdge(i, j, distance);
+				}
+			}
+		}
+		graph.buildAdjacency();
+		
+		return graph;
+	}
+
+	/**
+	 * Grid mode: runs jump point search over an occupancy raster of the same obstacles the
+	 * graph builders use, without the goal itself.  No roadmap is built.
+	 * @return the path from the ship to the goal or null if there is none
+	 */
+	public static Vertex[] createJumpPointPath(JumpPointSearch search, Toroidal2DPhysics state, Ship myShip,
+			Position goalPosition) {
+		List<AbstractObject> obstacles = new ArrayList<AbstractObject>();
+		for (Asteroid asteroid : state.getAsteroids()) {
+			if (!asteroid.getPosition().equals(goalPosition)) {
+				obstacles.add(asteroid);
+			}
+		}
+		for (Base base : state.getBases()) {
+			if (!base.getTeamName().equalsIgnoreCase(myShip.getTeamName())) {
+				obstacles.add(base);
+			}
+		}
+
+		OccupancyGrid occupancy = new OccupancyGrid(state, obstacles);
+		return search.findPath(state, occupancy, myShip.getPosition(), goalPosition);
+	}
+
+	/**
+	 * Persistent roadmap mode: brings the roadmap up to date with the current tick and attaches
+	 * the ship and the goal to it as temporary vertices.  Only the roadmap edges whose clearance
+	 * was invalidated since the last tick are re-checked.  Call roadmap.detach() after the search.
+	 */
+	public static Graph createGraphToGoalWithRoadmap(Roadmap roadmap, Toroidal2DPhysics state, Ship myShip, 
+			Position goalPosition) {
+		roadmap.update(state, myShip);
+		return roadmap.attach(state, myShip, goalPosition);
+	}
+
 }
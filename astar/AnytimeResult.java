@@ -0,0 +1,54 @@
+package stan5674.astar;
+
+/**
+ * Outcome of a time budgeted search.  The path either reaches a goal (complete) or, when the
+ * deadline came before any goal was found, ends at the expanded vertex closest to a goal.
+ */
+public class AnytimeResult {
+	private final Vertex[] path;
+	private final double pathCost;
+	private final double bound;
+	private final boolean complete;
+	private final boolean optimal;
+
+	AnytimeResult(Vertex[] path, double pathCost, double bound, boolean complete, boolean optimal) {
+		this.path = path;
+		this.pathCost = pathCost;
+		this.bound = bound;
+		this.complete = complete;
+		this.optimal = optimal;
+	}
+
+	/**
+	 * The best path found, or null if the search could not leave the start
+	 */
+	public Vertex[] getPath() {
+		return path;
+	}
+
+	public double getPathCost() {
+		return pathCost;
+	}
+
+	/**
+	 * The path costs at most this many times the optimal cost.  Infinite for partial paths.
+	 */
+	public double getBound() {
+		return bound;
+	}
+
+	/**
+	 * Does the path end at a goal?
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+
+	/**
+	 * Was the path proven optimal before the deadline?  Also true when the search proved
+	 * that no path exists.
+	 */
+	public boolean isOptimal() {
+		return optimal;
+	}
+}
@@ -0,0 +1,254 @@
+package stan5674.astar;
+
+import java.util.Arrays;
+
+import spacesettlers.simulator.Toroidal2DPhysics;
+
+/**
+ * Bidirectional AStar over a Graph.  A forward search grows from the start guided by the
+ * distance to the closest goal, and a reverse search grows from every goal at once guided
+ * by the distance to the start.  Both heuristics are consistent on the toroidal straight
+ * line distances, so the smallest f on either side is a lower bound on any path that has
+ * not been seen yet.  The searches stop as soon as either bound reaches the best meeting
+ * cost, and the path through the meeting vertex is optimal.
+ *
+ * Vertices that cannot beat the best meeting are never queued, and a vertex already
+ * expanded by the other side is not expanded again, since every path through it is known.
+ *
+ * Like IndexedAStar the arrays are reused between searches.  Not thread safe.
+ */
+public class BidirectionalAStar {
+	private IndexedHeap forward, reverse;
+	private double[] forwardCost, reverseCost, toGoal, toStart;
+	private int[] forwardParent, reverseParent;
+	private Edge[] forwardEdge, reverseEdge;
+	private int[] forwardTouched, reverseTouched, forwardClosed, reverseClosed, heuristicStamp;
+	private int stamp;
+	private int lastExpansions;
+
+	public BidirectionalAStar() {
+		this(256);
+	}
+
+	public BidirectionalAStar(int capacity) {
+		forward = new IndexedHeap(capacity);
+		reverse = new IndexedHeap(capacity);
+		allocate(capacity);
+	}
+
+	private void allocate(int capacity) {
+		forwardCost = new double[capacity];
+		reverseCost = new double[capacity];
+		toGoal = new double[capacity];
+		toStart = new double[capacity];
+		forwardParent = new int[capacity];
+		reverseParent = new int[capacity];
+		forwardEdge = new Edge[capacity];
+		reverseEdge = new Edge[capacity];
+		forwardTouched = new int[capacity];
+		reverseTouched = new int[capacity];
+		forwardClosed = new int[capacity];
+		reverseClosed = new int[capacity];
+		heuristicStamp = new int[capacity];
+		stamp = 0;
+	}
+
+	/**
+	 * Grows the arrays to hold a graph of the given size and starts a new search
+	 */
+	private void prepare(int numVertices) {
+		if (numVertices > forwardCost.length) {
+			int capacity = Math.max(numVertices, forwardCost.length * 2);
+			forward.ensureCapacity(capacity);
+			reverse.ensureCapacity(capacity);
+			allocate(capacity);
+		}
+		forward.clear();
+		reverse.clear();
+		stamp++;
+		if (stamp == Integer.MAX_VALUE) {
+			Arrays.fill(forwardTouched, 0);
+			Arrays.fill(reverseTouched, 0);
+			Arrays.fill(forwardClosed, 0);
+			Arrays.fill(reverseClosed, 0);
+			Arrays.fill(heuristicStamp, 0);
+			stamp = 1;
+		}
+		lastExpansions = 0;
+	}
+
+	/**
+	 * Number of vertices both searches expanded in the last call to findPath
+	 */
+	public int getLastExpansions() {
+		return lastExpansions;
+	}
+
+	/**
+	 * find an optimal path from the start to a goal of the graph, within the same
+	 * number of expansions (counted over both directions) as Graph.findAStarPath.  If the
+	 * step limit runs out after the searches have met, the best path so far is returned.
+	 * @return the path from start to goal or null if none was found
+	 */
+	public Vertex[] findPath(Graph graph, Toroidal2DPhysics state) {
+		Vertex start = graph.getStart();
+		if (start == null || !graph.contains(start) || graph.getGoals().isEmpty()) {
+			return null;
+		}
+		prepare(graph.getVertices().size());
+
+		int startIndex = start.getIndex();
+		touchForward(startIndex, -1, null, 0);
+		heuristics(graph, start, state);
+		forward.update(startIndex, toGoal[startIndex]);
+		for (Vertex goal : graph.getGoals()) {
+			if (graph.contains(goal)) {
+				int g = goal.getIndex();
+				touchReverse(g, -1, null, 0);
+				heuristics(graph, goal, state);
+				reverse.update(g, toStart[g]);
+			}
+		}
+
+		double best = Double.POSITIVE_INFINITY;
+		int meet = -1;
+		if (reverseTouched[startIndex] == stamp) {
+			// the start is a goal
+			best = 0;
+			meet = startIndex;
+		}
+
+		int steps = -1;
+		while (!forward.isEmpty() && !reverse.isEmpty() && steps < Graph.maxSearchSteps) {
+			// no path through an unexpanded vertex can beat the best meeting any more
+			if (forward.peekKey() >= best || reverse.peekKey() >= best) {
+				break;
+			}
+
+			// grow the smaller frontier
+			boolean forwardSide = forward.size() <= reverse.size();
+			int current = forwardSide ? forward.poll() : reverse.poll();
+			if (forwardSide) {
+				forwardClosed[current] = stamp;
+				if (reverseClosed[current] == stamp) {
+					continue;
+				}
+			} else {
+				reverseClosed[current] = stamp;
+				if (forwardClosed[current] == stamp) {
+					continue;
+				}
+			}
+			Vertex vertex = graph.getVertices().get(current);
+			lastExpansions++;
+
+			for (int e = 0; e < vertex.getEdgeCount(); e++) {
+				Edge edge = vertex.getEdge(e);
+				Vertex child = vertex.getNeighbor(edge);
+				if (!graph.contains(child)) {
+					continue;
+				}
+				int c = child.getIndex();
+
+				if (forwardSide) {
+					if (forwardClosed[c] == stamp) {
+						continue;
+					}
+					double cost = forwardCost[current] + edge.getPathCost();
+					if (forwardTouched[c] != stamp || cost < forwardCost[c]) {
+						heuristics(graph, child, state);
+						if (cost + toGoal[c] >= best) {
+							continue;
+						}
+						touchForward(c, current, edge, cost);
+						forward.update(c, cost + toGoal[c]);
+						if (reverseTouched[c] == stamp && cost + reverseCost[c] < best) {
+							best = cost + reverseCost[c];
+							meet = c;
+						}
+					}
+				} else {
+					if (reverseClosed[c] == stamp) {
+						continue;
+					}
+					double cost = reverseCost[current] + edge.getPathCost();
+					if (reverseTouched[c] != stamp || cost < reverseCost[c]) {
+						heuristics(graph, child, state);
+						if (cost + toStart[c] >= best) {
+							continue;
+						}
+						touchReverse(c, current, edge, cost);
+						reverse.update(c, cost + toStart[c]);
+						if (forwardTouched[c] == stamp && cost + forwardCost[c] < best) {
+							best = cost + forwardCost[c];
+							meet = c;
+						}
+					}
+				}
+			}
+			steps++;
+		}
+
+		if (meet < 0) {
+			return null;
+		}
+		return extractPath(graph, meet);
+	}
+
+	/**
+	 * Computes both heuristics of a vertex, once per search
+	 */
+	private void heuristics(Graph graph, Vertex vertex, Toroidal2DPhysics state) {
+		int v = vertex.getIndex();
+		if (heuristicStamp[v] != stamp) {
+			heuristicStamp[v] = stamp;
+			toGoal[v] = graph.estimateCostToGoal(vertex, state);
+			toStart[v] = state.findShortestDistance(graph.getStart().getPosition(), vertex.getPosition());
+		}
+	}
+
+	private void touchForward(int v, int from, Edge edge, double cost) {
+		forwardTouched[v] = stamp;
+		forwardCost[v] = cost;
+		forwardParent[v] = from;
+		forwardEdge[v] = edge;
+	}
+
+	private void touchReverse(int v, int from, Edge edge, double cost) {
+		reverseTouched[v] = stamp;
+		reverseCost[v] = cost;
+		reverseParent[v] = from;
+		reverseEdge[v] = edge;
+	}
+
+	/**
+	 * Joins the forward parents from the start to the meeting vertex with the reverse
+	 * parents from there to a goal, and marks the path as the solution
+	 */
+	private Vertex[] extractPath(Graph graph, int meet) {
+		int forwardLength = 0;
+		for (int v = meet; v >= 0; v = forwardParent[v]) {
+			forwardLength++;
+		}
+		int reverseLength = 0;
+		for (int v = reverseParent[meet]; v >= 0; v = reverseParent[v]) {
+			reverseLength++;
+		}
+
+		Vertex[] solutionPath = new Vertex[forwardLength + reverseLength];
+		for (int v = meet, t = forwardLength - 1; v >= 0; v = forwardParent[v], t--) {
+			solutionPath[t] = graph.getVertices().get(v);
+			if (forwardEdge[v] != null) {
+				forwardEdge[v].setSolution();
+			}
+		}
+		for (int v = meet, t = forwardLength; reverseParent[v] >= 0; v = reverseParent[v], t++) {
+			solutionPath[t] = graph.getVertices().get(reverseParent[v]);
+			reverseEdge[v].setSolution();
+		}
+		for (Vertex vertex : solutionPath) {
+			vertex.setSolution();
+		}
+		return solutionPath;
+	}
+}
@@ -0,0 +1,267 @@
+package stan5674.astar;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import spacesettlers.simulator.Toroidal2DPhysics;
+import spacesettlers.utilities.Position;
+
+/**
+ * Graph backend that keeps positions in primitive arrays and the adjacency in
+ * compressed sparse row form: the neighbours of vertex v are
+ * neighbours[offsets[v]] .. neighbours[offsets[v+1]-1] with matching costs.
+ *
+ * Vertices and undirected edges are added first, then buildAdjacency() packs them.
+ * Search follows the same contract as Graph.findAStarPath.
+ */
+public class CompactGraph {
+	private int numVertices;
+	private double[] xs, ys;
+	private boolean[] goal;
+	private int[] goalList;
+	private int start;
+	private int numSampledVertices;
+
+	// edges staged until the adjacency is packed
+	private int numEdges;
+	private int[] edgeFrom, edgeTo;
+	private double[] edgeCost;
+
+	// compressed sparse row adjacency
+	private int[] offsets;
+	private int[] neighbours;
+	private double[] costs;
+
+	// the Vertex objects this graph was converted from, if any
+	private Vertex[] source;
+
+	public CompactGraph(int vertexCapacity) {
+		int capacity = Math.max(1, vertexCapacity);
+		xs = new double[capacity];
+		ys = new double[capacity];
+		goal = new boolean[capacity];
+		edgeFrom = new int[capacity * 4];
+		edgeTo = new int[capacity * 4];
+		edgeCost = new double[capacity * 4];
+		start = -1;
+	}
+
+	/**
+	 * Packs an existing Graph into compact form.  Paths found on the result
+	 * are returned as the original Vertex objects.
+	 */
+	public static CompactGraph fromGraph(Graph graph) {
+		Vertex[] vertices = graph.getVertices().toArray(new Vertex[graph.getVertices().size()]);
+		CompactGraph compact = new CompactGraph(vertices.length);
+		compact.source = vertices;
+		compact.numSampledVertices = graph.getNumSampledVertices();
+
+		Map<Vertex, Integer> index = new IdentityHashMap<Vertex, Integer>();
+		for (int v = 0; v < vertices.length; v++) {
+			Position position = vertices[v].getPosition();
+			index.put(vertices[v], compact.addVertex(position.getX(), position.getY(), 
+					vertices[v].isStart(), vertices[v].isGoal()));
+		}
+
+		// add every edge once, from the lower indexed end
+		for (int v = 0; v < vertices.length; v++) {
+			for (Edge edge : vertices[v].getEdges()) {
+				Vertex other = (edge.getVertex1() == vertices[v]) ? edge.getVertex2() : edge.getVertex1();
+				Integer w = index.get(other);
+				if (w != null && w > v) {
+					compact.addEdge(v, w, edge.getPathCost());
+				}
+			}
+		}
+		compact.buildAdjacency();
+		return compact;
+	}
+
+	/**
+	 * Number of free space vertices the sampler actually placed when the graph was built
+	 */
+	public int getNumSampledVertices() {
+		return numSampledVertices;
+	}
+
+	public void setNumSampledVertices(int numSampledVertices) {
+		this.numSampledVertices = numSampledVertices;
+	}
+
+	/**
+	 * Adds a vertex and returns its index
+	 */
+	public int addVertex(double x, double y, boolean isStart, boolean isGoal) {
+		if (numVertices == xs.length) {
+			int capacity = xs.length * 2;
+			xs = Arrays.copyOf(xs, capacity);
+			ys = Arrays.copyOf(ys, capacity);
+			goal = Arrays.copyOf(goal, capacity);
+		}
+		xs[numVertices] = x;
+		ys[numVertices] = y;
+		goal[numVertices] = isGoal;
+		if (isStart) {
+			start = numVertices;
+		}
+		return numVertices++;
+	}
+
+	/**
+	 * Adds an undirected edge between two vertex indices
+	 */
+	public void addEdge(int v1, int v2, double cost) {
+		if (numEdges == edgeFrom.length) {
+			int capacity = edgeFrom.length * 2;
+			edgeFrom = Arrays.copyOf(edgeFrom, capacity);
+			edgeTo = Arrays.copyOf(edgeTo, capacity);
+			edgeCost = Arrays.copyOf(edgeCost, capacity);
+		}
+		edgeFrom[numEdges] = v1;
+		edgeTo[numEdges] = v2;
+		edgeCost[numEdges] = cost;
+		numEdges++;
+	}
+
+	/**
+	 * Packs the staged edges into the compressed sparse row arrays
+	 */
+	public void buildAdjacency() {
+		offsets = new int[numVertices + 1];
+		for (int e = 0; e < numEdges; e++) {
+			offsets[edgeFrom[e] + 1]++;
+			offsets[edgeTo[e] + 1]++;
+		}
+		for (int v = 0; v < numVertices; v++) {
+			offsets[v + 1] += offsets[v];
+		}
+
+		neighbours = new int[numEdges * 2];
+		costs = new double[numEdges * 2];
+		int[] fill = Arrays.copyOf(offsets, numVertices);
+		for (int e = 0; e < numEdges; e++) {
+			neighbours[fill[edgeFrom[e]]] = edgeTo[e];
+			costs[fill[edgeFrom[e]]++] = edgeCost[e];
+			neighbours[fill[edgeTo[e]]] = edgeFrom[e];
+			costs[fill[edgeTo[e]]++] = edgeCost[e];
+		}
+
+		int numGoals = 0;
+		goalList = new int[numVertices];
+		for (int v = 0; v < numVertices; v++) {
+			if (goal[v]) {
+				goalList[numGoals++] = v;
+			}
+		}
+		goalList = Arrays.copyOf(goalList, numGoals);
+
+		// the staging arrays are no longer needed
+		edgeFrom = edgeTo = null;
+		edgeCost = null;
+	}
+
+	public int getNumVertices() {
+		return numVertices;
+	}
+
+	public int getStart() {
+		return start;
+	}
+
+	public boolean isGoal(int v) {
+		return goal[v];
+	}
+
+	public double getX(int v) {
+		return xs[v];
+	}
+
+	public double getY(int v) {
+		return ys[v];
+	}
+
+	public int[] getOffsets() {
+		return offsets;
+	}
+
+	public int[] getNeighbours() {
+		return neighbours;
+	}
+
+	public double[] getCosts() {
+		return costs;
+	}
+
+	/**
+	 * Straight line toroidal distance from v to the nearest goal
+	 */
+	double heuristic(int v, double width, double height) {
+		double minDist = Double.MAX_VALUE;
+		for (int g : goalList) {
+			double dx = wrap(xs[g] - xs[v], width);
+			double dy = wrap(ys[g] - ys[v], height);
+			minDist = Math.min(minDist, Math.sqrt(dx * dx + dy * dy));
+		}
+		return minDist;
+	}
+
+	static double wrap(double delta, double size) {
+		delta = delta % size;
+		if (delta >= size / 2) {
+			delta -= size;
+		} else if (delta < -size / 2) {
+			delta += size;
+		}
+		return delta;
+	}
+
+	/**
+	 * find an optimal path from the start to the goal using astar, with the same
+	 * step limit and return value as Graph.findAStarPath
+	 * @return
+	 */
+	public Vertex[] findAStarPath(Toroidal2DPhysics state) {
+		return findAStarPath(state, new IndexedAStar(numVertices));
+	}
+
+	/**
+	 * same as findAStarPath(state), reusing the engine's search arrays
+	 * @return
+	 */
+	public Vertex[] findAStarPath(Toroidal2DPhysics state, IndexedAStar engine) {
+		return engine.findPath(this, state);
+	}
+
+	/**
+	 * Walks the parent links back from the goal.  Returns the source Vertex objects
+	 * when there are any, new ones otherwise.
+	 */
+	Vertex[] extractPath(int[] parent, int goalVertex) {
+		int length = 0;
+		for (int v = goalVertex; v >= 0; v = parent[v]) {
+			length++;
+		}
+
+		Vertex[] solutionPath = new Vertex[length];
+		for (int v = goalVertex, t = length - 1; v >= 0; v = parent[v], t--) {
+			solutionPath[t] = vertexAt(v);
+		}
+		return solutionPath;
+	}
+
+	private Vertex vertexAt(int v) {
+		if (source != null) {
+			source[v].setSolution();
+			return source[v];
+		}
+		Vertex vertex = new Vertex(new Position(xs[v], ys[v]));
+		if (v == start) {
+			vertex.setStart();
+		}
+		if (goal[v]) {
+			vertex.setGoal();
+		}
+		return vertex;
+	}
+}
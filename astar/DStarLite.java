@@ -0,0 +1,362 @@
+package stan5674.astar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import spacesettlers.objects.Ship;
+import spacesettlers.simulator.Toroidal2DPhysics;
+import spacesettlers.utilities.Position;
+
+/**
+ * D* Lite over a Roadmap.  The search runs backwards from the goal and its state is kept
+ * between ticks, so when the roadmap reports edges that were blocked or cleared only the
+ * vertices at their ends are updated and only the costs that actually changed are
+ * propagated.  The ship moving is absorbed by the key offset km instead of a restart.
+ *
+ * The goal and the ship are two extra nodes joined to the roadmap the same way attach joins
+ * them.  The ship's node is a sink: no path may pass through where the ship was, so moving
+ * it only changes the ship's own edges.
+ *
+ * The search starts over when the goal moves further than the roadmap's drift tolerance or
+ * when a roadmap update was missed, since getChangedEdges only covers the last one.
+ *
+ * Not thread safe.
+ */
+public class DStarLite {
+	private final Roadmap roadmap;
+	private final Vertex[] vertices;
+	private final Map<Vertex, Integer> roadmapIndex;
+	private final int goalNode, startNode;
+
+	private final double[] g, rhs;
+	private final IndexedHeap open;
+
+	/** cost of the edge from each roadmap vertex to the goal and to the ship, infinite if none */
+	private final double[] goalCost, startCost;
+	private double directCost;
+	private int[] goalAttached, previousAttached, startAttached;
+	private int numGoalAttached, numStartAttached;
+
+	private Position start, goal;
+	private double km;
+	private int consumedUpdate;
+	private int lastExpansions;
+
+	public DStarLite(Roadmap roadmap) {
+		this.roadmap = roadmap;
+		this.vertices = roadmap.getVertices();
+		roadmapIndex = new IdentityHashMap<Vertex, Integer>();
+		for (int v = 0; v < vertices.length; v++) {
+			roadmapIndex.put(vertices[v], v);
+		}
+		goalNode = vertices.length;
+		startNode = vertices.length + 1;
+
+		g = new double[vertices.length + 2];
+		rhs = new double[vertices.length + 2];
+		open = new IndexedHeap(vertices.length + 2);
+		goalCost = new double[vertices.length];
+		startCost = new double[vertices.length];
+		goalAttached = new int[vertices.length];
+		previousAttached = new int[vertices.length];
+		startAttached = new int[vertices.length];
+	}
+
+	/**
+	 * Repairs the path from the ship to the goal after this tick's changes to the roadmap.
+	 * Call once per tick; the roadmap is brought up to date first if it was not already.
+	 * @return the ship's position, the roadmap vertices and the goal, or null if the goal
+	 * cannot be reached over the roadmap
+	 */
+	public Vertex[] replan(Toroidal2DPhysics state, Ship ship, Position goalPosition) {
+		roadmap.update(state, ship);
+		Position position = ship.getPosition();
+		lastExpansions = 0;
+
+		if (goal == null || roadmap.getUpdates() > consumedUpdate + 1
+				|| state.findShortestDistance(goal, goalPosition) > Roadmap.driftTolerance) {
+			initialize(state, position, goalPosition);
+		} else {
+			km += state.findShortestDistance(start, position);
+			start = position;
+			if (roadmap.getUpdates() != consumedUpdate) {
+				for (Edge edge : roadmap.getChangedEdges()) {
+					Integer a = roadmapIndex.get(edge.getVertex1());
+					Integer b = roadmapIndex.get(edge.getVertex2());
+					if (a != null) {
+						updateVertex(state, a);
+					}
+					if (b != null) {
+						updateVertex(state, b);
+					}
+				}
+			}
+		}
+		consumedUpdate = roadmap.getUpdates();
+
+		attachGoal(state, goalPosition);
+		attachStart(state, goalPosition);
+		computeShortestPath(state);
+		return extractPath();
+	}
+
+	public Roadmap getRoadmap() {
+		return roadmap;
+	}
+
+	/**
+	 * Drops the search state, the next replan searches from scratch
+	 */
+	public void reset() {
+		goal = null;
+	}
+
+	/**
+	 * Cost of the path returned by the last replan, infinite if there was none
+	 */
+	public double getPathCost() {
+		return g[startNode];
+	}
+
+	/**
+	 * Number of vertices expanded by the last replan
+	 */
+	public int getLastExpansions() {
+		return lastExpansions;
+	}
+
+	private void initialize(Toroidal2DPhysics state, Position position, Position goalPosition) {
+		start = position;
+		goal = new Position(goalPosition.getX(), goalPosition.getY());
+		km = 0;
+		Arrays.fill(g, Double.POSITIVE_INFINITY);
+		Arrays.fill(rhs, Double.POSITIVE_INFINITY);
+		Arrays.fill(goalCost, Double.POSITIVE_INFINITY);
+		Arrays.fill(startCost, Double.POSITIVE_INFINITY);
+		numGoalAttached = 0;
+		numStartAttached = 0;
+		open.clear();
+		rhs[goalNode] = 0;
+		open.update(goalNode, heuristic(state, goalNode), 0);
+	}
+
+	/**
+	 * Re-joins the goal to the roadmap and updates the vertices whose goal edge may have changed
+	 */
+	private void attachGoal(Toroidal2DPhysics state, Position goalPosition) {
+		int[] swap = previousAttached;
+		previousAttached = goalAttached;
+		goalAttached = swap;
+		int numPrevious = numGoalAttached;
+		for (int i = 0; i < numPrevious; i++) {
+			goalCost[previousAttached[i]] = Double.POSITIVE_INFINITY;
+		}
+
+		numGoalAttached = roadmap.attachmentsOf(state, goal, goalPosition, goalAttached);
+		for (int i = 0; i < numGoalAttached; i++) {
+			int v = goalAttached[i];
+			goalCost[v] = state.findShortestDistance(goal, vertices[v].getPosition());
+		}
+
+		for (int i = 0; i < numPrevious; i++) {
+			updateVertex(state, previousAttached[i]);
+		}
+		for (int i = 0; i < numGoalAttached; i++) {
+			updateVertex(state, goalAttached[i]);
+		}
+	}
+
+	/**
+	 * Re-joins the ship to the roadmap.  Nothing leads through the ship, so only its own
+	 * node needs an update.
+	 */
+	private void attachStart(Toroidal2DPhysics state, Position goalPosition) {
+		for (int i = 0; i < numStartAttached; i++) {
+			startCost[startAttached[i]] = Double.POSITIVE_INFINITY;
+		}
+		numStartAttached = roadmap.attachmentsOf(state, start, goalPosition, startAttached);
+		for (int i = 0; i < numStartAttached; i++) {
+			int v = startAttached[i];
+			startCost[v] = state.findShortestDistance(start, vertices[v].getPosition());
+		}
+		directCost = roadmap.canConnect(state, start, goal, goalPosition)
+				? state.findShortestDistance(start, goal) : Double.POSITIVE_INFINITY;
+		updateVertex(state, startNode);
+	}
+
+	private void computeShortestPath(Toroidal2DPhysics state) {
+		while (!open.isEmpty()) {
+			double startKey = Math.min(g[startNode], rhs[startNode]);
+			if (!less(open.peekKey(), open.peekSecondaryKey(), startKey + km, startKey)
+					&& rhs[startNode] == g[startNode]) {
+				break;
+			}
+
+			int u = open.peek();
+			double oldKey = open.peekKey();
+			double oldSecondary = open.peekSecondaryKey();
+			double base = Math.min(g[u], rhs[u]);
+			double newKey = base + heuristic(state, u) + km;
+			if (less(oldKey, oldSecondary, newKey, base)) {
+				// the key was computed before the ship moved
+				open.update(u, newKey, base);
+				continue;
+			}
+
+			open.poll();
+			lastExpansions++;
+			if (g[u] > rhs[u]) {
+				g[u] = rhs[u];
+			} else {
+				g[u] = Double.POSITIVE_INFINITY;
+				updateVertex(state, u);
+			}
+			updatePredecessors(state, u);
+		}
+	}
+
+	/**
+	 * Recomputes the one step lookahead of the node and queues it if it is inconsistent
+	 */
+	private void updateVertex(Toroidal2DPhysics state, int u) {
+		if (u != goalNode) {
+			rhs[u] = lookahead(u);
+		}
+		open.remove(u);
+		if (g[u] != rhs[u]) {
+			double base = Math.min(g[u], rhs[u]);
+			open.update(u, base + heuristic(state, u) + km, base);
+		}
+	}
+
+	/**
+	 * Updates every node whose lookahead goes through u
+	 */
+	private void updatePredecessors(Toroidal2DPhysics state, int u) {
+		if (u == goalNode) {
+			for (int i = 0; i < numGoalAttached; i++) {
+				updateVertex(state, goalAttached[i]);
+			}
+			if (directCost < Double.POSITIVE_INFINITY) {
+				updateVertex(state, startNode);
+			}
+			return;
+		}
+		if (u == startNode) {
+			return;
+		}
+		Vertex vertex = vertices[u];
+		for (int e = 0; e < vertex.getEdgeCount(); e++) {
+			Integer n = roadmapIndex.get(vertex.getNeighbor(vertex.getEdge(e)));
+			if (n != null) {
+				updateVertex(state, n);
+			}
+		}
+		if (startCost[u] < Double.POSITIVE_INFINITY) {
+			updateVertex(state, startNode);
+		}
+	}
+
+	/**
+	 * Smallest edge cost plus g over the node's successors towards the goal
+	 */
+	private double lookahead(int u) {
+		if (u == startNode) {
+			double best = directCost + g[goalNode];
+			for (int i = 0; i < numStartAttached; i++) {
+				int v = startAttached[i];
+				best = Math.min(best, startCost[v] + g[v]);
+			}
+			return best;
+		}
+		double best = goalCost[u] + g[goalNode];
+		Vertex vertex = vertices[u];
+		for (int e = 0; e < vertex.getEdgeCount(); e++) {
+			Edge edge = vertex.getEdge(e);
+			Integer n = roadmapIndex.get(vertex.getNeighbor(edge));
+			if (n != null) {
+				best = Math.min(best, edge.getPathCost() + g[n]);
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Follows the cheapest successor from the ship down to the goal
+	 */
+	private Vertex[] extractPath() {
+		if (g[startNode] == Double.POSITIVE_INFINITY) {
+			return null;
+		}
+		List<Vertex> path = new ArrayList<Vertex>();
+		Vertex startVertex = new Vertex(start);
+		startVertex.setStart();
+		path.add(startVertex);
+
+		int current = startNode;
+		while (current != goalNode) {
+			if (path.size() > vertices.length + 1) {
+				return null; // g is inconsistent, should not happen
+			}
+			int next = -1;
+			double best = Double.POSITIVE_INFINITY;
+			if (current == startNode) {
+				if (directCost < best) {
+					best = directCost;
+					next = goalNode;
+				}
+				for (int i = 0; i < numStartAttached; i++) {
+					int v = startAttached[i];
+					if (startCost[v] + g[v] < best) {
+						best = startCost[v] + g[v];
+						next = v;
+					}
+				}
+			} else {
+				if (goalCost[current] < best) {
+					best = goalCost[current];
+					next = goalNode;
+				}
+				Vertex vertex = vertices[current];
+				for (int e = 0; e < vertex.getEdgeCount(); e++) {
+					Edge edge = vertex.getEdge(e);
+					Integer n = roadmapIndex.get(vertex.getNeighbor(edge));
+					if (n != null && edge.getPathCost() + g[n] < best) {
+						best = edge.getPathCost() + g[n];
+						next = n;
+					}
+				}
+			}
+			if (next < 0) {
+				return null;
+			}
+			current = next;
+			if (current != goalNode) {
+				path.add(vertices[current]);
+			}
+		}
+
+		Vertex goalVertex = new Vertex(goal);
+		goalVertex.setGoal();
+		path.add(goalVertex);
+		return path.toArray(new Vertex[path.size()]);
+	}
+
+	/**
+	 * Straight line distance from the ship, the search runs towards it
+	 */
+	private double heuristic(Toroidal2DPhysics state, int u) {
+		if (u == startNode) {
+			return 0;
+		}
+		Position position = (u == goalNode) ? goal : vertices[u].getPosition();
+		return state.findShortestDistance(start, position);
+	}
+
+	private static boolean less(double key, double secondary, double otherKey, double otherSecondary) {
+		return key < otherKey || (key == otherKey && secondary < otherSecondary);
+	}
+}
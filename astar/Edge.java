@@ -8,6 +8,7 @@ import spacesettlers.utilities.Vector2D;
 
 public class Edge {
 	LineGraphics graphic;
+	Vector2D lineVec;
 	Vertex vertex1, vertex2;
 	double pathCost;
 	boolean isSolution;
@@ -17,12 +18,27 @@ public class Edge {
 		this.vertex2 = vertex2;
 		vertex1.addEdge(this);
 		vertex2.addEdge(this);
+		this.lineVec = lineVec;
 		pathCost = lineVec.getMagnitude();
-		graphic = new LineGraphics(vertex1.getPosition(), vertex2.getPosition(), lineVec); 
-		graphic.setLineColor(Color.RED);
 	}
 	
+	/**
+	 * The graphic is created on first request, and not at all while rendering is off
+	 */
 	public SpacewarGraphics getGraphic() {
+		if (!Rendering.isEnabled()) {
+			return null;
+		}
+		if (graphic == null) {
+			graphic = new LineGraphics(vertex1.getPosition(), vertex2.getPosition(), lineVec); 
+		}
+		if (isSolution) {
+			graphic.setLineColor(Color.YELLOW);
+			graphic.setStrokeWidth(4);
+		} else {
+			graphic.setLineColor(Color.RED);
+			graphic.setStrokeWidth(1);
+		}
 		return graphic;
 	}
 	
@@ -40,7 +56,9 @@ public class Edge {
 	
 	public void setSolution() {
 		isSolution = true;
-		graphic.setLineColor(Color.YELLOW);
-		graphic.setStrokeWidth(4);
+	}
+
+	public void clearSolution() {
+		isSolution = false;
 	}
 }
@@ -5,10 +5,20 @@ import spacesettlers.actions.DoNothingAction;
 import spacesettlers.actions.MoveAction;
 import spacesettlers.objects.Ship;
 import spacesettlers.simulator.Toroidal2DPhysics;
+import spacesettlers.utilities.Position;
+import spacesettlers.utilities.Vector2D;
 
 /**
  * This action takes a path as input and outputs the primitive commands 
  * necessary to follow the path.  Path following is accomplished using pd-control.
+ *
+ * Given a replanner and a goal instead of a fixed path, the path is repaired every call so
+ * asteroids drifting into it are routed around.
+ *
+ * In tracking mode the ship heads for one waypoint at a time and moves on to the next as soon
+ * as it is close, without waiting for the move to finish, so the same MoveAction steers it
+ * until then.  The path is only replanned once the ship strays too far from the segment it
+ * is on or an obstacle blocks the way to the waypoint.
  * @author amy
  *
  */
@@ -17,6 +27,17 @@ public class FollowPathAction {
 	int currentVertex;
 	boolean finishedShortAction;
 	AbstractAction lastCommand;
+	DStarLite replanner;
+	PathSmoother smoother;
+	Position goal;
+	boolean tracking;
+	boolean replanNeeded;
+
+	/** tracking mode moves on to the next waypoint within this distance of the current one */
+	static final double switchDistance = 30;
+
+	/** tracking mode replans once the ship is this far from the segment it is following */
+	static final double maxCrossTrackError = 40;
 
 	public FollowPathAction() {
 		path = null;
@@ -24,6 +45,13 @@ public class FollowPathAction {
 		lastCommand = null;
 	}
 
+	public FollowPathAction(DStarLite replanner, Position goal) {
+		this();
+		this.replanner = replanner;
+		this.smoother = new PathSmoother();
+		this.goal = goal;
+	}
+
 	public FollowPathAction (Vertex[] newPath) {
 		path = newPath;
 		currentVertex = 0;
@@ -32,6 +60,7 @@ public class FollowPathAction {
 	public void followNewPath(Vertex[] newPath) {
 		path = newPath;
 		currentVertex = 0;
+		replanNeeded = false;
 	}
 
 	/**
@@ -42,6 +71,12 @@ public class FollowPathAction {
 	 */
 	public AbstractAction followPath(Toroidal2DPhysics state, Ship ship) {
 		//System.out.println("Following path at current action " + currentVertex);
+		if (tracking) {
+			return trackPath(state, ship);
+		}
+		if (replanner != null) {
+			repairPath(state, ship);
+		}
 
 		// safety case:  break if we have a null path
 		if (path == null || currentVertex < 0) {
@@ -68,6 +103,132 @@ public class FollowPathAction {
 		return lastCommand;
 	}
 
+	/**
+	 * Tracking mode: keeps the move towards the current waypoint until the ship is close to
+	 * it, and replans only when the ship strayed or the way ahead is blocked
+	 */
+	private AbstractAction trackPath(Toroidal2DPhysics state, Ship ship) {
+		if (replanner != null && (path == null || replanNeeded)) {
+			repairPath(state, ship);
+			replanNeeded = false;
+		}
+		if (path == null || currentVertex < 0 || currentVertex >= path.length) {
+			if (!(lastCommand instanceof DoNothingAction)) {
+				lastCommand = new DoNothingAction();
+			}
+			return lastCommand;
+		}
+		if (currentVertex == 0) {
+			// the path starts where the ship was when it was planned
+			currentVertex = 1;
+			lastCommand = null;
+		}
+
+		Position position = ship.getPosition();
+		while (currentVertex < path.length - 1
+				&& state.findShortestDistance(position, path[currentVertex].getPosition()) < switchDistance) {
+			currentVertex++;
+			lastCommand = null;
+		}
+
+		replanNeeded = crossTrackError(state, position) > maxCrossTrackError || isBlocked(state, ship);
+		if (replanNeeded && replanner != null) {
+			repairPath(state, ship);
+			replanNeeded = false;
+			if (currentVertex == 0) {
+				currentVertex = 1;
+			}
+		}
+
+		if (lastCommand == null || lastCommand.isMovementFinished(state)) {
+			if (lastCommand != null && currentVertex == path.length - 1) {
+				// arrived at the goal
+				currentVertex = path.length;
+				lastCommand = new DoNothingAction();
+			} else {
+				lastCommand = new MoveAction(state, position, path[currentVertex].getPosition());
+			}
+		}
+		return lastCommand;
+	}
+
+	/**
+	 * Distance from the ship to the path segment it is following
+	 */
+	private double crossTrackError(Toroidal2DPhysics state, Position position) {
+		Position from = path[currentVertex - 1].getPosition();
+		Vector2D segment = state.findShortestDistanceVector(from, path[currentVertex].getPosition());
+		Vector2D offset = state.findShortestDistanceVector(from, position);
+		double lengthSq = segment.getXValue() * segment.getXValue() + segment.getYValue() * segment.getYValue();
+		double t = 0;
+		if (lengthSq > 0) {
+			t = (offset.getXValue() * segment.getXValue() + offset.getYValue() * segment.getYValue()) / lengthSq;
+			t = Math.max(0, Math.min(1, t));
+		}
+		double dx = offset.getXValue() - t * segment.getXValue();
+		double dy = offset.getYValue() - t * segment.getYValue();
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+
+	/**
+	 * Is the line from the ship to its waypoint blocked?  Only known with a replanner, whose
+	 * roadmap has this tick's obstacles.
+	 */
+	private boolean isBlocked(Toroidal2DPhysics state, Ship ship) {
+		if (replanner == null) {
+			return false;
+		}
+		Roadmap roadmap = replanner.getRoadmap();
+		roadmap.update(state, ship);
+		return !smoother.isClear(state, ship.getPosition(), path[currentVertex].getPosition(),
+				roadmap.getObstacleGrid(), goal);
+	}
+
+	/**
+	 * Switches tracking mode on or off
+	 */
+	public void setTracking(boolean tracking) {
+		this.tracking = tracking;
+	}
+
+	/**
+	 * Did the ship stray from the path in tracking mode?  Without a replanner, the caller
+	 * should plan a new path and pass it to followNewPath.
+	 */
+	public boolean isReplanNeeded() {
+		return replanNeeded;
+	}
+
+	/**
+	 * Replaces the path with the replanner's repaired one.  The move in progress is only
+	 * cut short when the next waypoint changed; if the goal became unreachable the old path
+	 * is kept.
+	 */
+	private void repairPath(Toroidal2DPhysics state, Ship ship) {
+		Vertex[] newPath = replanner.replan(state, ship, goal);
+		if (newPath == null) {
+			return;
+		}
+		newPath = smoother.shortcut(state, newPath, replanner.getRoadmap().getObstacleGrid(), goal);
+		if (path != null && currentVertex > 0 && currentVertex < path.length
+				&& sameWaypoint(path[currentVertex], newPath[1])) {
+			path = newPath;
+			currentVertex = 1;
+		} else {
+			path = newPath;
+			currentVertex = 0;
+			lastCommand = null;
+		}
+	}
+
+	private boolean sameWaypoint(Vertex a, Vertex b) {
+		// roadmap vertices are shared between replans, the goal vertex is not
+		return a == b || (a.isGoal() && b.isGoal());
+	}
+
+	public void setGoal(Position goal) {
+		this.goal = goal;
+	}
 
 
 }
@@ -0,0 +1,89 @@
+package stan5674.astar;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import spacesettlers.simulator.Toroidal2DPhysics;
+import spacesettlers.utilities.Position;
+
+/**
+ * Places roadmap vertices in free space along a randomly shifted Halton sequence (bases 2
+ * and 3), which covers the map more evenly than independent random samples.  The number of
+ * attempts is capped, so a dense field costs a bounded amount of time and simply yields
+ * fewer vertices.
+ */
+public class FreeSpaceSampler {
+	private final double shiftX, shiftY;
+	private int index;
+	private List<Position> positions;
+	private int placed;
+	private int attempts;
+
+	public FreeSpaceSampler(Random random) {
+		// a random shift of the whole sequence keeps graphs from repeating between builds
+		shiftX = random.nextDouble();
+		shiftY = random.nextDouble();
+		index = 1;
+	}
+
+	/**
+	 * Samples up to count free positions, trying at most maxAttempts points
+	 * @param asteroids occupancy raster of the asteroids grown by fudge_factor
+	 * @return the positions placed, which may be fewer than count
+	 */
+	public List<Position> sample(Toroidal2DPhysics state, OccupancyGrid asteroids, int count, int maxAttempts) {
+		positions = new ArrayList<Position>(count);
+		placed = 0;
+		attempts = 0;
+
+		while (placed < count && attempts < maxAttempts) {
+			double newX = ((radicalInverse(index, 2) + shiftX) % 1.0) * state.getWidth();
+			double newY = ((radicalInverse(index, 3) + shiftY) % 1.0) * state.getHeight();
+			index++;
+			attempts++;
+
+			Position position = new Position(newX, newY);
+			if (AStarSearch.inFreeSpace(position, state, asteroids)) {
+				positions.add(position);
+				placed++;
+			}
+		}
+		return positions;
+	}
+
+	/**
+	 * Positions placed by the last call to sample
+	 */
+	public List<Position> getPositions() {
+		return positions;
+	}
+
+	/**
+	 * Number of positions placed by the last call to sample
+	 */
+	public int getPlaced() {
+		return placed;
+	}
+
+	/**
+	 * Number of points tried by the last call to sample
+	 */
+	public int getAttempts() {
+		return attempts;
+	}
+
+	/**
+	 * The i-th element of the van der Corput sequence in the given base
+	 */
+	static double radicalInverse(int i, int base) {
+		double inverse = 0;
+		double fraction = 1.0 / base;
+		while (i > 0) {
+			inverse += (i % base) * fraction;
+			i /= base;
+			fraction /= base;
+		}
+		return inverse;
+	}
+}
@@ -16,7 +16,9 @@ public class Graph {
 	private Vector <Edge> edges;
 	private Vector <Vertex>goals;
 	private Vertex start;
-	private static final int maxSearchSteps = 100;
+	private int numSampledVertices;
+	private Landmarks.Bounds landmarkBounds;
+	static final int maxSearchSteps = 100;
 
 	public Graph() {
 		vertices = new Vector<Vertex>();
@@ -36,6 +38,7 @@ public class Graph {
 	 * @param v
 	 */
 	public void addVertex(Vertex v) {
+		v.setIndex(vertices.size());
 		vertices.add(v);
 
 		if (v.isGoal()) {
@@ -51,16 +54,92 @@ public class Graph {
 		edges.add(e);
 	}
 
+	public void removeEdge(Edge e) {
+		edges.remove(e);
+	}
+
+	/**
+	 * Drops every vertex and edge added after the first numVertices and numEdges, so a
+	 * persistent graph can take temporary vertices for a single search
+	 */
+	public void truncate(int numVertices, int numEdges) {
+		while (vertices.size() > numVertices) {
+			Vertex v = vertices.remove(vertices.size() - 1);
+			goals.remove(v);
+			if (v == start) {
+				start = null;
+			}
+		}
+		edges.setSize(Math.min(edges.size(), numEdges));
+	}
+
 	public Vector<Vertex> getVertices() {
 		return vertices;
 	}
 
+	/**
+	 * Number of free space vertices the sampler actually placed when the graph was built
+	 */
+	public int getNumSampledVertices() {
+		return numSampledVertices;
+	}
+
+	public void setNumSampledVertices(int numSampledVertices) {
+		this.numSampledVertices = numSampledVertices;
+	}
+
+	public Vector<Edge> getEdges() {
+		return edges;
+	}
+
+	public Vector<Vertex> getGoals() {
+		return goals;
+	}
+
+	/**
+	 * Is the vertex part of this graph?  Roadmap vertices are shared between graphs,
+	 * so their neighbours may belong to another graph's temporary attachments.
+	 */
+	public boolean contains(Vertex v) {
+		int index = v.getIndex();
+		return index >= 0 && index < vertices.size() && vertices.get(index) == v;
+	}
+
+	/**
+	 * Straight line toroidal distance from the vertex to the closest goal, tightened by the
+	 * landmark bounds in ALT mode
+	 */
+	public double estimateCostToGoal(Vertex vertex, Toroidal2DPhysics state) {
+		double minDist = Double.MAX_VALUE;
+		for (int g = 0; g < goals.size(); g++) {
+			double dist = state.findShortestDistance(vertex.getPosition(), goals.get(g).getPosition());
+			if (dist < minDist) {
+				minDist = dist;
+			}
+		}
+		if (landmarkBounds != null) {
+			return landmarkBounds.estimate(vertex, minDist);
+		}
+		return minDist;
+	}
+
+	/**
+	 * ALT mode: use the landmark tables of the roadmap this graph was attached to.  Call once
+	 * the start and goal are attached, or with null to go back to straight line estimates.
+	 */
+	public void setLandmarks(Landmarks landmarks) {
+		landmarkBounds = (landmarks == null) ? null : landmarks.boundsFor(this);
+	}
+
 	/**
 	 * Get the graphics objects for the whole graph (with solution colored)
 	 * @return
 	 */
 	public Set<SpacewarGraphics> getAllGraphics() {
 		Set<SpacewarGraphics> shadows = new HashSet<SpacewarGraphics>();
+		if (!Rendering.isEnabled()) {
+			return shadows;
+		}
 
 		for (int v = 0; v < vertices.size(); v++) {
 			SpacewarGraphics shadow = ((Vertex)vertices.get(v)).getGraphic();
@@ -81,6 +160,9 @@ public class Graph {
 	 */
 	public Set<SpacewarGraphics> getSolutionPathGraphics() {
 		Set<SpacewarGraphics> graphics = new HashSet<SpacewarGraphics>();
+		if (!Rendering.isEnabled()) {
+			return graphics;
+		}
 
 		for (Vertex vertex : vertices) {
 			if (vertex.isSolution()) {
@@ -105,6 +187,13 @@ public class Graph {
 		for (int v = 0; v < vertices.size(); v++) {
 			vertices.get(v).setExpanded(false);
 			vertices.get(v).setPathCost(0);
+			vertices.get(v).setHeuristicCostToGoal(-1); // not computed yet
+			vertices.get(v).clearSolution();
+		}
+
+		// roadmap edges are shared between searches, so clear the last solution
+		for (int e = 0; e < edges.size(); e++) {
+			edges.get(e).clearSolution();
 		}
 	}
 
@@ -113,24 +202,10 @@ public class Graph {
 	 * @return
 	 */
 	public Vertex[] findAStarPath(Toroidal2DPhysics state) {
-		double minDist, dist;
-
-		// initialize the graph
+		// initialize the graph.  G is already stored in the edges, and the H distances are
+		// only computed for the vertices the search actually reaches
 		resetGraphForSearch();
 
-		// setup the H distances.  G is already stored in the edges
-		for (int v = 0; v < vertices.size(); v++) {
-			minDist = Double.MAX_VALUE;
-			Vertex vertex = vertices.get(v);
-			for (int g = 0; g < goals.size(); g++) {
-				dist = state.findShortestDistance(vertex.getPosition(), goals.get(g).getPosition());
-				if (dist < minDist) {
-					minDist = dist;
-				}
-			}
-			vertex.setHeuristicCostToGoal(minDist);
-		}
-
 		// now search for a goal using AStar.  The priority queue uses the search tree nodes
 		// because of Astar's ability to jump around in the search.  This is a clean way to
 		// both know where you are in the search tree and to know what the next node's priority is
@@ -140,7 +215,7 @@ public class Graph {
 		// start the search with the children of the start node.  
 		DefaultMutableTreeNode searchTree = new DefaultMutableTreeNode(new SearchNode(start, null));
 		start.setExpanded(true);
-		visitSuccessors(queue, searchTree, start);
+		visitSuccessors(state, queue, searchTree, start);
 
 		// initilize the loop
 		boolean goalFound = false;
@@ -178,7 +253,7 @@ public class Graph {
 
 			// otherwise, mark it as expanded and visit it's successors
 			nextVertex.setExpanded(true);
-			visitSuccessors(queue, currentNode, nextVertex);
+			visitSuccessors(state, queue, currentNode, nextVertex);
 
 			steps++;
 		}
@@ -209,16 +284,53 @@ public class Graph {
 		}
 	}
 
+	/**
+	 * find an optimal path from the start to the goal using the allocation free
+	 * indexed heap search.  The engine keeps its arrays between searches.
+	 * @return
+	 */
+	public Vertex[] findAStarPath(Toroidal2DPhysics state, IndexedAStar engine) {
+		return engine.findPath(this, state);
+	}
+
+	/**
+	 * find an optimal path from the start to the goal searching from both ends at once,
+	 * which expands far fewer vertices on long routes
+	 * @return
+	 */
+	public Vertex[] findBidirectionalAStarPath(Toroidal2DPhysics state) {
+		return findBidirectionalAStarPath(state, new BidirectionalAStar(vertices.size()));
+	}
+
+	/**
+	 * same as findBidirectionalAStarPath, keeping the engine's arrays between searches
+	 * @return
+	 */
+	public Vertex[] findBidirectionalAStarPath(Toroidal2DPhysics state, BidirectionalAStar engine) {
+		return engine.findPath(this, state);
+	}
+
+	/**
+	 * find the best path the deadline allows, improving it from a fast inflated search
+	 * towards an optimal one instead of giving up after maxSearchSteps expansions
+	 * @param deadline System.nanoTime() value to stop at
+	 * @return
+	 */
+	public AnytimeResult findAnytimePath(Toroidal2DPhysics state, IndexedAStar engine, long deadline) {
+		return engine.findPathAnytime(this, state, deadline);
+	}
+
 	/**
 	 * Visits all successors of the listed vertex, adds all non-expanded ones 
 	 * to the queue and saves them in the search tree
 	 */
-	private void visitSuccessors(PriorityQueue<DefaultMutableTreeNode> queue, 
+	private void visitSuccessors(Toroidal2DPhysics state, PriorityQueue<DefaultMutableTreeNode> queue, 
 			DefaultMutableTreeNode tree, Vertex vertex) {
 		for (Edge edge : vertex.getEdges()) {
 			Vertex child = edge.getVertex1();
 			if (!child.isExpanded()) {
 				child.setPathCost(vertex.getPathCost() + edge.getPathCost());
+				estimateOnFirstTouch(child, state);
 				child.updateF();
 
 				DefaultMutableTreeNode node = new DefaultMutableTreeNode(new SearchNode(child, edge));
@@ -230,6 +342,7 @@ public class Graph {
 			child = edge.getVertex2();
 			if (!child.isExpanded()) {
 				child.setPathCost(vertex.getPathCost() + edge.getPathCost());
+				estimateOnFirstTouch(child, state);
 				child.updateF();
 
 				DefaultMutableTreeNode node = new DefaultMutableTreeNode(new SearchNode(child, edge));
@@ -239,6 +352,12 @@ public class Graph {
 		}
 	}
 
+	private void estimateOnFirstTouch(Vertex vertex, Toroidal2DPhysics state) {
+		if (vertex.getHeuristicCostToGoal() < 0) {
+			vertex.setHeuristicCostToGoal(estimateCostToGoal(vertex, state));
+		}
+	}
+
 	public Vertex getStart() {
 		return start;
 	}
@@ -0,0 +1,343 @@
+package stan5674.astar;
+
+import java.util.Arrays;
+
+import spacesettlers.simulator.Toroidal2DPhysics;
+
+/**
+ * AStar over vertex indices with an indexed binary heap and decrease-key.  The path cost,
+ * heuristic and parent arrays live in the engine and are reused by every search, so a
+ * search allocates nothing besides the returned path.  Arrays are invalidated with a
+ * search stamp instead of being cleared.
+ *
+ * Not thread safe: keep one engine per planning thread.
+ */
+public class IndexedAStar {
+	/** weights of the anytime passes: the first, and how much each later pass lowers it */
+	static final double anytimeInitialWeight = 2.5;
+	static final double anytimeWeightStep = 0.5;
+
+	private IndexedHeap open;
+	private double[] pathCost;
+	private double[] heuristic;
+	private int[] parent;
+	private Edge[] parentEdge;
+	private int[] touched;
+	private int[] closed;
+	private int stamp;
+	private int lastExpansions;
+
+	public IndexedAStar() {
+		this(256);
+	}
+
+	public IndexedAStar(int capacity) {
+		open = new IndexedHeap(capacity);
+		pathCost = new double[capacity];
+		heuristic = new double[capacity];
+		parent = new int[capacity];
+		parentEdge = new Edge[capacity];
+		touched = new int[capacity];
+		closed = new int[capacity];
+		stamp = 0;
+	}
+
+	/**
+	 * Grows the arrays to hold a graph of the given size and starts a new search
+	 */
+	private void prepare(int numVertices) {
+		if (numVertices > pathCost.length) {
+			int capacity = Math.max(numVertices, pathCost.length * 2);
+			open.ensureCapacity(capacity);
+			pathCost = new double[capacity];
+			heuristic = new double[capacity];
+			parent = new int[capacity];
+			parentEdge = new Edge[capacity];
+			touched = new int[capacity];
+			closed = new int[capacity];
+			stamp = 0;
+		}
+		open.clear();
+		lastExpansions = 0;
+		stamp++;
+		if (stamp == Integer.MAX_VALUE) {
+			Arrays.fill(touched, 0);
+			Arrays.fill(closed, 0);
+			stamp = 1;
+		}
+	}
+
+	/**
+	 * Number of vertices expanded by the last search
+	 */
+	public int getLastExpansions() {
+		return lastExpansions;
+	}
+
+	/**
+	 * find an optimal path from the start to a goal of the graph, within the same
+	 * number of expansions as Graph.findAStarPath
+	 * @return the path from start to goal or null if none was found
+	 */
+	public Vertex[] findPath(Graph graph, Toroidal2DPhysics state) {
+		Vertex start = graph.getStart();
+		if (start == null || !graph.contains(start)) {
+			return null;
+		}
+		prepare(graph.getVertices().size());
+
+		int startIndex = start.getIndex();
+		touch(startIndex, -1, null, 0, graph.estimateCostToGoal(start, state));
+		open.update(startIndex, heuristic[startIndex]);
+
+		// the start is expanded before the step limit is counted, as in Graph.findAStarPath
+		int steps = -1;
+		while (!open.isEmpty() && steps < Graph.maxSearchSteps) {
+			int current = open.poll();
+			Vertex vertex = graph.getVertices().get(current);
+
+			if (vertex.isGoal()) {
+				return extractPath(graph, current);
+			}
+			closed[current] = stamp;
+			lastExpansions++;
+
+			for (int e = 0; e < vertex.getEdgeCount(); e++) {
+				Edge edge = vertex.getEdge(e);
+				Vertex child = vertex.getNeighbor(edge);
+				if (!graph.contains(child)) {
+					continue;
+				}
+				int c = child.getIndex();
+				if (closed[c] == stamp) {
+					continue;
+				}
+
+				double cost = pathCost[current] + edge.getPathCost();
+				if (touched[c] != stamp) {
+					// the heuristic is only computed once a vertex is first reached
+					touch(c, current, edge, cost, graph.estimateCostToGoal(child, state));
+					open.update(c, cost + heuristic[c]);
+				} else if (cost < pathCost[c]) {
+					pathCost[c] = cost;
+					parent[c] = current;
+					parentEdge[c] = edge;
+					open.update(c, cost + heuristic[c]);
+				}
+			}
+			steps++;
+		}
+		return null;
+	}
+
+	/**
+	 * find an optimal path on the compact backend, same contract as findPath(Graph)
+	 * @return the path from start to goal or null if none was found
+	 */
+	public Vertex[] findPath(CompactGraph graph, Toroidal2DPhysics state) {
+		int start = graph.getStart();
+		if (start < 0) {
+			return null;
+		}
+		prepare(graph.getNumVertices());
+		double width = state.getWidth();
+		double height = state.getHeight();
+		int[] offsets = graph.getOffsets();
+		int[] neighbours = graph.getNeighbours();
+		double[] costs = graph.getCosts();
+
+		touch(start, -1, null, 0, graph.heuristic(start, width, height));
+		open.update(start, heuristic[start]);
+
+		int steps = -1;
+		while (!open.isEmpty() && steps < Graph.maxSearchSteps) {
+			int current = open.poll();
+			if (graph.isGoal(current)) {
+				return graph.extractPath(parent, current);
+			}
+			closed[current] = stamp;
+			lastExpansions++;
+
+			for (int n = offsets[current]; n < offsets[current + 1]; n++) {
+				int c = neighbours[n];
+				if (closed[c] == stamp) {
+					continue;
+				}
+
+				double cost = pathCost[current] + costs[n];
+				if (touched[c] != stamp) {
+					touch(c, current, null, cost, graph.heuristic(c, width, height));
+					open.update(c, cost + heuristic[c]);
+				} else if (cost < pathCost[c]) {
+					pathCost[c] = cost;
+					parent[c] = current;
+					open.update(c, cost + heuristic[c]);
+				}
+			}
+			steps++;
+		}
+		return null;
+	}
+
+	/**
+	 * Anytime search: weighted AStar passes with a decreasing weight, each pruned by the best
+	 * path so far, until a pass with weight 1 proves the path optimal or the deadline passes.
+	 * There is no step limit, the deadline alone bounds the work.
+	 * @param deadline System.nanoTime() value to stop at
+	 * @return the best path found, partial if no goal was reached in time
+	 */
+	public AnytimeResult findPathAnytime(Graph graph, Toroidal2DPhysics state, long deadline) {
+		Vertex start = graph.getStart();
+		if (start == null || !graph.contains(start)) {
+			return new AnytimeResult(null, 0, Double.POSITIVE_INFINITY, false, false);
+		}
+		int numVertices = graph.getVertices().size();
+		int startIndex = start.getIndex();
+
+		Vertex[] best = null;
+		double bestCost = Double.POSITIVE_INFINITY;
+		double bound = Double.POSITIVE_INFINITY;
+
+		for (double weight = anytimeInitialWeight; ; weight = Math.max(1, weight - anytimeWeightStep)) {
+			prepare(numVertices);
+			touch(startIndex, -1, null, 0, graph.estimateCostToGoal(start, state));
+			open.update(startIndex, weight * heuristic[startIndex]);
+
+			int goal = -1;
+			int closest = startIndex;
+			int expansions = 0;
+			boolean timedOut = false;
+			while (!open.isEmpty()) {
+				if ((++expansions & 7) == 0 && System.nanoTime() - deadline >= 0) {
+					timedOut = true;
+					break;
+				}
+				int current = open.poll();
+				if (pathCost[current] + heuristic[current] >= bestCost) {
+					continue; // cannot beat the incumbent
+				}
+				Vertex vertex = graph.getVertices().get(current);
+				if (vertex.isGoal()) {
+					goal = current;
+					break;
+				}
+				lastExpansions++;
+				if (heuristic[current] < heuristic[closest]) {
+					closest = current;
+				}
+
+				for (int e = 0; e < vertex.getEdgeCount(); e++) {
+					Edge edge = vertex.getEdge(e);
+					Vertex child = vertex.getNeighbor(edge);
+					if (!graph.contains(child)) {
+						continue;
+					}
+					int c = child.getIndex();
+					double cost = pathCost[current] + edge.getPathCost();
+					if (touched[c] != stamp) {
+						touch(c, current, edge, cost, graph.estimateCostToGoal(child, state));
+						open.update(c, cost + weight * heuristic[c]);
+					} else if (cost < pathCost[c]) {
+						// inflated passes can expand a vertex too early, so it may be reopened
+						pathCost[c] = cost;
+						parent[c] = current;
+						parentEdge[c] = edge;
+						open.update(c, cost + weight * heuristic[c]);
+					}
+				}
+			}
+
+			if (goal >= 0) {
+				best = collectPath(graph, goal);
+				bestCost = pathCost[goal];
+				bound = weight;
+			}
+			if (timedOut) {
+				if (best == null) {
+					// nothing reached a goal yet, hand back the way towards the closest vertex
+					return new AnytimeResult(collectPath(graph, closest), pathCost[closest],
+							Double.POSITIVE_INFINITY, false, false);
+				}
+				break;
+			}
+			if (weight <= 1 || best == null) {
+				// a finished pass with weight 1 is plain AStar, and a finished pass without a
+				// goal proves there is no path at all
+				markSolution(best);
+				return new AnytimeResult(best, bestCost, 1, best != null, true);
+			}
+		}
+		markSolution(best);
+		return new AnytimeResult(best, bestCost, bound, true, false);
+	}
+
+	/**
+	 * The vertices on the parent links from the start to v
+	 */
+	private Vertex[] collectPath(Graph graph, int v) {
+		int length = 0;
+		for (int u = v; u >= 0; u = parent[u]) {
+			length++;
+		}
+		Vertex[] path = new Vertex[length];
+		for (int u = v, t = length - 1; u >= 0; u = parent[u], t--) {
+			path[t] = graph.getVertices().get(u);
+		}
+		return path;
+	}
+
+	/**
+	 * Marks the path's vertices and the cheapest edges between them as the solution
+	 */
+	private void markSolution(Vertex[] path) {
+		if (path == null) {
+			return;
+		}
+		for (int t = 0; t < path.length; t++) {
+			path[t].setSolution();
+			if (t == 0) {
+				continue;
+			}
+			Edge cheapest = null;
+			for (int e = 0; e < path[t].getEdgeCount(); e++) {
+				Edge edge = path[t].getEdge(e);
+				if (path[t].getNeighbor(edge) == path[t - 1]
+						&& (cheapest == null || edge.getPathCost() < cheapest.getPathCost())) {
+					cheapest = edge;
+				}
+			}
+			if (cheapest != null) {
+				cheapest.setSolution();
+			}
+		}
+	}
+
+	private void touch(int v, int from, Edge edge, double cost, double h) {
+		touched[v] = stamp;
+		pathCost[v] = cost;
+		heuristic[v] = h;
+		parent[v] = from;
+		parentEdge[v] = edge;
+	}
+
+	/**
+	 * Walks the parent links back to the start and marks the path as the solution
+	 */
+	private Vertex[] extractPath(Graph graph, int goal) {
+		int length = 0;
+		for (int v = goal; v >= 0; v = parent[v]) {
+			length++;
+		}
+
+		Vertex[] solutionPath = new Vertex[length];
+		for (int v = goal, t = length - 1; v >= 0; v = parent[v], t--) {
+			Vertex vertex = graph.getVertices().get(v);
+			vertex.setSolution();
+			solutionPath[t] = vertex;
+			if (parentEdge[v] != null) {
+				parentEdge[v].setSolution();
+			}
+		}
+		return solutionPath;
+	}
+}
@@ -0,0 +1,190 @@
+package stan5674.astar;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap over int items 0..capacity-1 with a position index, so an item's
+ * key can be decreased (or changed) in place instead of pushing a duplicate entry.
+ * Nothing is allocated after construction unless the capacity has to grow.
+ *
+ * Items are ordered by key, and items with equal keys by an optional secondary key.
+ */
+public class IndexedHeap {
+	private int[] heap;
+	private int[] position;
+	private double[] key;
+	private double[] secondary;
+	private int size;
+
+	public IndexedHeap(int capacity) {
+		heap = new int[Math.max(1, capacity)];
+		position = new int[heap.length];
+		key = new double[heap.length];
+		secondary = new double[heap.length];
+		Arrays.fill(position, -1);
+	}
+
+	/**
+	 * Grows the heap so items up to capacity-1 can be stored
+	 */
+	public void ensureCapacity(int capacity) {
+		if (capacity > heap.length) {
+			int oldLength = heap.length;
+			int newLength = Math.max(capacity, oldLength * 2);
+			heap = Arrays.copyOf(heap, newLength);
+			key = Arrays.copyOf(key, newLength);
+			secondary = Arrays.copyOf(secondary, newLength);
+			position = Arrays.copyOf(position, newLength);
+			Arrays.fill(position, oldLength, newLength, -1);
+		}
+	}
+
+	/**
+	 * Empties the heap in O(size)
+	 */
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			position[heap[i]] = -1;
+		}
+		size = 0;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean contains(int item) {
+		return position[item] >= 0;
+	}
+
+	public double getKey(int item) {
+		return key[item];
+	}
+
+	/**
+	 * The item with the smallest key, without removing it
+	 */
+	public int peek() {
+		return heap[0];
+	}
+
+	public double peekKey() {
+		return key[heap[0]];
+	}
+
+	public double peekSecondaryKey() {
+		return secondary[heap[0]];
+	}
+
+	/**
+	 * Inserts the item, or moves it to its new key if it is already in the heap
+	 */
+	public void update(int item, double newKey) {
+		update(item, newKey, 0);
+	}
+
+	/**
+	 * Same as update(item, newKey), ties on the key are broken by the secondary key
+	 */
+	public void update(int item, double newKey, double newSecondary) {
+		if (position[item] < 0) {
+			heap[size] = item;
+			position[item] = size;
+			key[item] = newKey;
+			secondary[item] = newSecondary;
+			siftUp(size++);
+		} else {
+			boolean decreased = newKey < key[item] || (newKey == key[item] && newSecondary < secondary[item]);
+			key[item] = newKey;
+			secondary[item] = newSecondary;
+			if (decreased) {
+				siftUp(position[item]);
+			} else {
+				siftDown(position[item]);
+			}
+		}
+	}
+
+	/**
+	 * Inserts the item, or lowers its key if the new key is smaller.  Returns
+	 * true if the heap changed.
+	 */
+	public boolean insertOrDecrease(int item, double newKey) {
+		if (position[item] >= 0 && newKey >= key[item]) {
+			return false;
+		}
+		update(item, newKey);
+		return true;
+	}
+
+	/**
+	 * Removes and returns the item with the smallest key
+	 */
+	public int poll() {
+		int top = heap[0];
+		remove(top);
+		return top;
+	}
+
+	/**
+	 * Removes the item if it is in the heap
+	 */
+	public void remove(int item) {
+		int slot = position[item];
+		if (slot < 0) {
+			return;
+		}
+		position[item] = -1;
+		size--;
+		if (slot < size) {
+			int last = heap[size];
+			heap[slot] = last;
+			position[last] = slot;
+			siftUp(slot);
+			siftDown(position[last]);
+		}
+	}
+
+	private void siftUp(int slot) {
+		int item = heap[slot];
+		while (slot > 0) {
+			int parentSlot = (slot - 1) >>> 1;
+			int parent = heap[parentSlot];
+			if (!less(item, parent)) {
+				break;
+			}
+			heap[slot] = parent;
+			position[parent] = slot;
+			slot = parentSlot;
+		}
+		heap[slot] = item;
+		position[item] = slot;
+	}
+
+	private void siftDown(int slot) {
+		int item = heap[slot];
+		int half = size >>> 1;
+		while (slot < half) {
+			int child = 2 * slot + 1;
+			if (child + 1 < size && less(heap[child + 1], heap[child])) {
+				child++;
+			}
+			if (!less(heap[child], item)) {
+				break;
+			}
+			heap[slot] = heap[child];
+			position[heap[slot]] = slot;
+			slot = child;
+		}
+		heap[slot] = item;
+		position[item] = slot;
+	}
+
+	private boolean less(int a, int b) {
+		return key[a] < key[b] || (key[a] == key[b] && secondary[a] < secondary[b]);
+	}
+}
@@ -0,0 +1,379 @@
+package stan5674.astar;
+
+import java.util.Arrays;
+
+import spacesettlers.simulator.Toroidal2DPhysics;
+import spacesettlers.utilities.Position;
+
+/**
+ * Jump point search over an OccupancyGrid.  The grid is treated as 8-connected and wraps on
+ * both axes; a cell can be entered when no grown obstacle touches it, and a diagonal step is
+ * only taken when both cells beside it are free, so paths never cut the corner of an obstacle.
+ * Straight and diagonal runs are skipped in one jump, and only the cells where the path may
+ * have to turn are pushed on the open list.
+ *
+ * Jumps stop after half the grid, since going further on a torus only comes back around.
+ * Without walls to stop at, a search for an unreachable goal would sweep the whole torus, so
+ * the free cells are labelled with their connected component once per grid and such a goal
+ * is rejected before searching.
+ *
+ * The arrays are reused between searches.  Not thread safe.
+ */
+public class JumpPointSearch {
+	/** offsets of the four edge neighbours */
+	private static final int[] edgeX = {1, -1, 0, 0};
+	private static final int[] edgeY = {0, 0, 1, -1};
+
+	private IndexedHeap open;
+	private double[] pathCost;
+	private int[] parent;
+	private int[] touched;
+	private int[] closed;
+	private int stamp;
+	private int lastExpansions;
+
+	// the grid of the current search
+	private OccupancyGrid grid;
+	private int cols, rows;
+	private int startCell, goalCell;
+
+	// connected components of the free cells, for the last grid they were labelled on
+	private OccupancyGrid labelledGrid;
+	private int[] component;
+	private int[] queue;
+
+	public JumpPointSearch() {
+		open = new IndexedHeap(1);
+		pathCost = new double[0];
+	}
+
+	/**
+	 * Grows the arrays to hold the grid and starts a new search
+	 */
+	private void prepare(int numCells) {
+		if (numCells > pathCost.length) {
+			open.ensureCapacity(numCells);
+			pathCost = new double[numCells];
+			parent = new int[numCells];
+			touched = new int[numCells];
+			closed = new int[numCells];
+			stamp = 0;
+		}
+		open.clear();
+		lastExpansions = 0;
+		stamp++;
+		if (stamp == Integer.MAX_VALUE) {
+			Arrays.fill(touched, 0);
+			Arrays.fill(closed, 0);
+			stamp = 1;
+		}
+	}
+
+	/**
+	 * Number of jump points expanded by the last search
+	 */
+	public int getLastExpansions() {
+		return lastExpansions;
+	}
+
+	/**
+	 * find a shortest 8-connected path over the grid from the start to the goal
+	 * @return the start, the turning points and the goal, or null if the goal cannot be reached
+	 */
+	public Vertex[] findPath(Toroidal2DPhysics state, OccupancyGrid grid, Position start, Position goal) {
+		this.grid = grid;
+		cols = grid.getCols();
+		rows = grid.getRows();
+		prepare(cols * rows);
+
+		startCell = cellOf(grid.columnOf(start), grid.rowOf(start));
+		goalCell = cellOf(grid.columnOf(goal), grid.rowOf(goal));
+		if (!connected(startCell, goalCell)) {
+			return null;
+		}
+
+		pathCost[startCell] = 0;
+		parent[startCell] = -1;
+		touched[startCell] = stamp;
+		open.update(startCell, heuristic(startCell));
+
+		while (!open.isEmpty()) {
+			int current = open.poll();
+			if (current == goalCell) {
+				return extractPath(start, goal);
+			}
+			closed[current] = stamp;
+			lastExpansions++;
+
+			int x = current % cols;
+			int y = current / cols;
+			if (parent[current] < 0) {
+				for (int dy = -1; dy <= 1; dy++) {
+					for (int dx = -1; dx <= 1; dx++) {
+						if ((dx != 0 || dy != 0) && canStep(x, y, dx, dy)) {
+							jumpFrom(current, x, y, dx, dy);
+						}
+					}
+				}
+				continue;
+			}
+
+			// the direction the search arrived in
+			int px = parent[current] % cols;
+			int py = parent[current] / cols;
+			int dx = Integer.signum(wrap(x - px, cols));
+			int dy = Integer.signum(wrap(y - py, rows));
+			if (dx != 0 && dy != 0) {
+				boolean vertical = free(x, y + dy);
+				boolean horizontal = free(x + dx, y);
+				if (vertical) {
+					jumpFrom(current, x, y, 0, dy);
+				}
+				if (horizontal) {
+					jumpFrom(current, x, y, dx, 0);
+				}
+				if (vertical && horizontal) {
+					jumpFrom(current, x, y, dx, dy);
+				}
+			} else if (dx != 0) {
+				boolean up = free(x, y + 1);
+				boolean down = free(x, y - 1);
+				if (free(x + dx, y)) {
+					jumpFrom(current, x, y, dx, 0);
+					if (up) {
+						jumpFrom(current, x, y, dx, 1);
+					}
+					if (down) {
+						jumpFrom(current, x, y, dx, -1);
+					}
+				}
+				if (up) {
+					jumpFrom(current, x, y, 0, 1);
+				}
+				if (down) {
+					jumpFrom(current, x, y, 0, -1);
+				}
+			} else {
+				boolean right = free(x + 1, y);
+				boolean left = free(x - 1, y);
+				if (free(x, y + dy)) {
+					jumpFrom(current, x, y, 0, dy);
+					if (right) {
+						jumpFrom(current, x, y, 1, dy);
+					}
+					if (left) {
+						jumpFrom(current, x, y, -1, dy);
+					}
+				}
+				if (right) {
+					jumpFrom(current, x, y, 1, 0);
+				}
+				if (left) {
+					jumpFrom(current, x, y, -1, 0);
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Jumps from the cell in the direction and queues the jump point it lands on
+	 */
+	private void jumpFrom(int current, int x, int y, int dx, int dy) {
+		if (dx != 0 && dy != 0 && !canStep(x, y, dx, dy)) {
+			return;
+		}
+		int steps = jump(x, y, dx, dy, true);
+		if (steps <= 0) {
+			return;
+		}
+		int next = cellOf(x + dx * steps, y + dy * steps);
+		if (closed[next] == stamp) {
+			return;
+		}
+
+		double stepLength = (dx != 0 && dy != 0)
+				? Math.hypot(grid.getCellWidth(), grid.getCellHeight())
+				: (dx != 0) ? grid.getCellWidth() : grid.getCellHeight();
+		double cost = pathCost[current] + steps * stepLength;
+		if (touched[next] != stamp || cost < pathCost[next]) {
+			touched[next] = stamp;
+			pathCost[next] = cost;
+			parent[next] = current;
+			open.update(next, cost + heuristic(next));
+		}
+	}
+
+	/**
+	 * Walks from (x, y) in the direction until a jump point: the goal, a cell with a forced
+	 * neighbour, or for diagonals a cell from which a straight jump finds one
+	 * @param stopAtLimit whether the cell at the step limit counts as a jump point; the straight
+	 * probes of a diagonal jump must not stop the diagonal just because they ran long
+	 * @return the number of steps to the jump point, or 0 if there is none
+	 */
+	private int jump(int x, int y, int dx, int dy, boolean stopAtLimit) {
+		// strictly less than half the grid, so the direction back to the parent stays unambiguous
+		int maxSteps = Math.max(1, (((dx != 0 && dy != 0) ? Math.min(cols, rows) : (dx != 0) ? cols : rows) - 1) / 2);
+		for (int steps = 1; steps <= maxSteps; steps++) {
+			x += dx;
+			y += dy;
+			if (!free(x, y)) {
+				return 0;
+			}
+			if (cellOf(x, y) == goalCell) {
+				return steps;
+			}
+			if (steps == maxSteps) {
+				return stopAtLimit ? steps : 0;
+			}
+
+			if (dx != 0 && dy != 0) {
+				if (jump(x, y, dx, 0, false) > 0 || jump(x, y, 0, dy, false) > 0) {
+					return steps;
+				}
+			} else if (dx != 0) {
+				if ((free(x, y - 1) && !free(x - dx, y - 1)) || (free(x, y + 1) && !free(x - dx, y + 1))) {
+					return steps;
+				}
+			} else {
+				if ((free(x - 1, y) && !free(x - 1, y - dy)) || (free(x + 1, y) && !free(x + 1, y - dy))) {
+					return steps;
+				}
+			}
+
+			if (!canStep(x, y, dx, dy)) {
+				return 0;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Could a path join the two cells?  Diagonal steps need both side cells free, so two free
+	 * cells are joined exactly when they are joined through edge neighbours, and the start and
+	 * goal reach the components of their free edge neighbours.
+	 */
+	private boolean connected(int from, int to) {
+		if (labelledGrid != grid) {
+			labelComponents();
+		}
+		if (from == to) {
+			return true;
+		}
+		int fx = from % cols, fy = from / cols;
+		int tx = to % cols, ty = to / cols;
+		for (int i = 0; i < 5; i++) {
+			int a = (i == 4) ? from : cellOf(fx + edgeX[i], fy + edgeY[i]);
+			if (a == to) {
+				return true;
+			}
+			if (component[a] < 0) {
+				continue;
+			}
+			for (int j = 0; j < 5; j++) {
+				int b = (j == 4) ? to : cellOf(tx + edgeX[j], ty + edgeY[j]);
+				if (component[a] == component[b]) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Labels the free cells of the grid by flood fill over edge neighbours, -1 for the others
+	 */
+	private void labelComponents() {
+		int numCells = cols * rows;
+		if (component == null || component.length < numCells) {
+			component = new int[numCells];
+			queue = new int[numCells];
+		}
+		for (int c = 0; c < numCells; c++) {
+			component[c] = grid.isCellFree(c % cols, c / cols) ? Integer.MAX_VALUE : -1;
+		}
+
+		int label = 0;
+		for (int seed = 0; seed < numCells; seed++) {
+			if (component[seed] != Integer.MAX_VALUE) {
+				continue;
+			}
+			int head = 0, tail = 0;
+			component[seed] = label;
+			queue[tail++] = seed;
+			while (head < tail) {
+				int c = queue[head++];
+				for (int i = 0; i < 4; i++) {
+					int n = cellOf(c % cols + edgeX[i], c / cols + edgeY[i]);
+					if (component[n] == Integer.MAX_VALUE) {
+						component[n] = label;
+						queue[tail++] = n;
+					}
+				}
+			}
+			label++;
+		}
+		labelledGrid = grid;
+	}
+
+	/**
+	 * Can the search move one cell in the direction?  Diagonals need both side cells free.
+	 */
+	private boolean canStep(int x, int y, int dx, int dy) {
+		if (!free(x + dx, y + dy)) {
+			return false;
+		}
+		return dx == 0 || dy == 0 || (free(x + dx, y) && free(x, y + dy));
+	}
+
+	/**
+	 * The start and goal cells are always enterable, a ship may already sit next to an asteroid
+	 */
+	private boolean free(int x, int y) {
+		int cell = cellOf(x, y);
+		return cell == startCell || cell == goalCell || grid.isCellFree(x, y);
+	}
+
+	/**
+	 * Straight line toroidal distance between the cell centres
+	 */
+	private double heuristic(int cell) {
+		double dx = wrap(cell % cols - goalCell % cols, cols) * grid.getCellWidth();
+		double dy = wrap(cell / cols - goalCell / cols, rows) * grid.getCellHeight();
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+
+	/**
+	 * The path from the actual start through the turning cells' centres to the actual goal
+	 */
+	private Vertex[] extractPath(Position start, Position goal) {
+		int length = 0;
+		for (int c = goalCell; c >= 0; c = parent[c]) {
+			length++;
+		}
+		length = Math.max(length, 2);
+
+		Vertex[] path = new Vertex[length];
+		int t = length - 1;
+		for (int c = parent[goalCell]; c >= 0 && t > 1; c = parent[c]) {
+			path[--t] = new Vertex(grid.cellCenter(c % cols, c / cols));
+		}
+		path[0] = new Vertex(start);
+		path[0].setStart();
+		path[length - 1] = new Vertex(goal);
+		path[length - 1].setGoal();
+		return path;
+	}
+
+	private int cellOf(int x, int y) {
+		return Math.floorMod(y, rows) * cols + Math.floorMod(x, cols);
+	}
+
+	/**
+	 * Wraps a cell difference into [-size/2, size/2)
+	 */
+	private static int wrap(int delta, int size) {
+		delta = Math.floorMod(delta, size);
+		return (delta >= (size + 1) / 2) ? delta - size : delta;
+	}
+}
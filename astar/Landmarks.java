@@ -0,0 +1,193 @@
+package stan5674.astar;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * ALT (A*, landmarks, triangle inequality) lower bounds on the roadmap.  The shortest path
+ * distance from a few landmark vertices to every roadmap vertex is tabled, and for a vertex v
+ * and a goal t every landmark L gives
+ *
+ *     d(v, t) >= d(L, t) - d(L, v)     and     d(v, t) >= d(L, v) - d(L, t)
+ *
+ * Around asteroid clusters this is far tighter than the straight line distance.  The goal is
+ * a temporary vertex, so d(L, t) is bounded through the roadmap vertices it is attached to.
+ *
+ * The tables are computed once, over every candidate pair of the roadmap as if no obstacle
+ * blocked it.  Whatever edges are blocked at search time, the roadmap is a subgraph of that
+ * graph with the same edge costs, so its distances are never shorter and the bounds stay
+ * admissible without ever being rebuilt.
+ */
+public class Landmarks {
+	public static final int defaultCount = 6;
+
+	private final Vertex[] vertices;
+	private final Map<Vertex, Integer> roadmapIndex;
+	private final int count;
+
+	/** distance[l][v] from landmark l to roadmap vertex v, infinite if unreachable */
+	private final double[][] distance;
+
+	/** every candidate pair of the roadmap in compressed sparse row form */
+	private final int[] offsets, neighbours;
+	private final double[] costs;
+
+	public Landmarks(Roadmap roadmap) {
+		this(roadmap, defaultCount);
+	}
+
+	public Landmarks(Roadmap roadmap, int count) {
+		this.vertices = roadmap.getVertices();
+		this.count = Math.min(count, vertices.length);
+		roadmapIndex = new IdentityHashMap<Vertex, Integer>();
+		for (int v = 0; v < vertices.length; v++) {
+			roadmapIndex.put(vertices[v], v);
+		}
+
+		// pack every candidate pair of the roadmap, blocked or not, as undirected edges
+		int numPairs = roadmap.getNumPairs();
+		offsets = new int[vertices.length + 1];
+		for (int p = 0; p < numPairs; p++) {
+			offsets[roadmap.getPairA(p) + 1]++;
+			offsets[roadmap.getPairB(p) + 1]++;
+		}
+		for (int v = 0; v < vertices.length; v++) {
+			offsets[v + 1] += offsets[v];
+		}
+		neighbours = new int[2 * numPairs];
+		costs = new double[2 * numPairs];
+		int[] fill = Arrays.copyOf(offsets, vertices.length);
+		for (int p = 0; p < numPairs; p++) {
+			int a = roadmap.getPairA(p);
+			int b = roadmap.getPairB(p);
+			neighbours[fill[a]] = b;
+			costs[fill[a]++] = roadmap.getPairLength(p);
+			neighbours[fill[b]] = a;
+			costs[fill[b]++] = roadmap.getPairLength(p);
+		}
+
+		// start from the best connected vertex, then farthest first: each landmark is the
+		// reachable vertex farthest from the ones picked so far
+		distance = new double[this.count][];
+		IndexedHeap heap = new IndexedHeap(vertices.length);
+		int next = 0;
+		for (int v = 0; v < vertices.length; v++) {
+			if (offsets[v + 1] - offsets[v] > offsets[next + 1] - offsets[next]) {
+				next = v;
+			}
+		}
+		double[] nearest = new double[vertices.length];
+		Arrays.fill(nearest, Double.POSITIVE_INFINITY);
+		for (int l = 0; l < this.count; l++) {
+			distance[l] = shortestDistances(next, heap);
+			double farthest = 0;
+			for (int v = 0; v < vertices.length; v++) {
+				nearest[v] = Math.min(nearest[v], distance[l][v]);
+				if (nearest[v] > farthest && nearest[v] < Double.POSITIVE_INFINITY) {
+					farthest = nearest[v];
+					next = v;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Dijkstra over the candidate pairs
+	 */
+	private double[] shortestDistances(int source, IndexedHeap heap) {
+		double[] dist = new double[vertices.length];
+		Arrays.fill(dist, Double.POSITIVE_INFINITY);
+		dist[source] = 0;
+		heap.clear();
+		heap.update(source, 0);
+		while (!heap.isEmpty()) {
+			int current = heap.poll();
+			for (int e = offsets[current]; e < offsets[current + 1]; e++) {
+				int n = neighbours[e];
+				double cost = dist[current] + costs[e];
+				if (cost < dist[n]) {
+					dist[n] = cost;
+					heap.update(n, cost);
+				}
+			}
+		}
+		return dist;
+	}
+
+	/**
+	 * Per goal bounds for one search, computed once the start and goal are attached
+	 */
+	public Bounds boundsFor(Graph graph) {
+		int numGoals = graph.getGoals().size();
+		double[][] toGoal = new double[numGoals][count];
+		double[][] fromGoal = new double[numGoals][count];
+
+		for (int g = 0; g < numGoals; g++) {
+			Vertex goal = graph.getGoals().get(g);
+			Arrays.fill(toGoal[g], Double.POSITIVE_INFINITY);
+			Arrays.fill(fromGoal[g], Double.NEGATIVE_INFINITY);
+
+			Integer index = roadmapIndex.get(goal);
+			if (index != null) {
+				for (int l = 0; l < count; l++) {
+					toGoal[g][l] = distance[l][index];
+					fromGoal[g][l] = distance[l][index];
+				}
+				continue;
+			}
+
+			// the goal is only reached over its attachments: d(L, t) = min over them of d(L, n) + c(n, t)
+			for (int e = 0; e < goal.getEdgeCount(); e++) {
+				Edge edge = goal.getEdge(e);
+				Integer n = roadmapIndex.get(goal.getNeighbor(edge));
+				if (n == null) {
+					continue;
+				}
+				for (int l = 0; l < count; l++) {
+					toGoal[g][l] = Math.min(toGoal[g][l], distance[l][n] + edge.getPathCost());
+					fromGoal[g][l] = Math.max(fromGoal[g][l], distance[l][n] - edge.getPathCost());
+				}
+			}
+		}
+		return new Bounds(toGoal, fromGoal);
+	}
+
+	/**
+	 * The landmark bounds towards the goals of one graph
+	 */
+	public class Bounds {
+		// for each goal and landmark: min over attachments of d(L, n) + c(n, t), and max of d(L, n) - c(n, t)
+		private final double[][] toGoal, fromGoal;
+
+		private Bounds(double[][] toGoal, double[][] fromGoal) {
+			this.toGoal = toGoal;
+			this.fromGoal = fromGoal;
+		}
+
+		/**
+		 * Lower bound on the path cost from the vertex to the closest goal, never below the
+		 * straight line estimate
+		 */
+		public double estimate(Vertex vertex, double straightLine) {
+			Integer index = roadmapIndex.get(vertex);
+			if (index == null) {
+				return straightLine;
+			}
+
+			double best = Double.POSITIVE_INFINITY;
+			for (int g = 0; g < toGoal.length; g++) {
+				double bound = straightLine;
+				for (int l = 0; l < count; l++) {
+					double d = distance[l][index];
+					if (d == Double.POSITIVE_INFINITY || toGoal[g][l] == Double.POSITIVE_INFINITY) {
+						continue;
+					}
+					bound = Math.max(bound, Math.max(toGoal[g][l] - d, d - fromGoal[g][l]));
+				}
+				best = Math.min(best, bound);
+			}
+			return best;
+		}
+	}
+}
@@ -0,0 +1,174 @@
+package stan5674.astar;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import spacesettlers.objects.AbstractObject;
+import spacesettlers.simulator.Toroidal2DPhysics;
+import spacesettlers.utilities.Position;
+
+/**
+ * Broadphase for segment versus obstacle checks.  Each obstacle's bounding circle, grown by
+ * the inflation, is rasterized into a toroidal grid.  A segment query walks only the cells the
+ * segment passes through (a DDA walk) and hands the obstacles found there to the exact test,
+ * so the answer is the same as testing against every obstacle.
+ */
+public class ObstacleGrid {
+	public static final double defaultCellSize = 50;
+
+	private final double width, height;
+	private final int cols, rows;
+	private final double cellWidth, cellHeight;
+	private final double inflation;
+	private final Set<AbstractObject> obstacles;
+
+	// obstacles sorted by cell, cellStart[c] .. cellStart[c+1] are the obstacles of cell c
+	private final int[] cellStart;
+	private final AbstractObject[] members;
+
+	public ObstacleGrid(Toroidal2DPhysics state, Collection<? extends AbstractObject> obstacles, double inflation) {
+		this(state, obstacles, inflation, defaultCellSize);
+	}
+
+	public ObstacleGrid(Toroidal2DPhysics state, Collection<? extends AbstractObject> obstacles, double inflation,
+			double cellSize) {
+		this.width = state.getWidth();
+		this.height = state.getHeight();
+		this.cols = Math.max(1, (int) (width / cellSize));
+		this.rows = Math.max(1, (int) (height / cellSize));
+		this.cellWidth = width / cols;
+		this.cellHeight = height / rows;
+		this.inflation = inflation;
+		this.obstacles = new HashSet<AbstractObject>(obstacles);
+
+		// two passes over the bounding boxes: count per cell, then fill
+		AbstractObject[] list = obstacles.toArray(new AbstractObject[obstacles.size()]);
+		int[][] boxes = new int[list.length][];
+		cellStart = new int[cols * rows + 1];
+		for (int o = 0; o < list.length; o++) {
+			boxes[o] = boundingCells(list[o]);
+			for (int c : boxes[o]) {
+				cellStart[c + 1]++;
+			}
+		}
+		for (int c = 0; c < cols * rows; c++) {
+			cellStart[c + 1] += cellStart[c];
+		}
+		members = new AbstractObject[cellStart[cols * rows]];
+		int[] fill = Arrays.copyOf(cellStart, cols * rows);
+		for (int o = 0; o < list.length; o++) {
+			for (int c : boxes[o]) {
+				members[fill[c]++] = list[o];
+			}
+		}
+	}
+
+	/**
+	 * The wrapped cells covered by the obstacle's inflated bounding box
+	 */
+	private int[] boundingCells(AbstractObject obstacle) {
+		// one extra unit so points exactly on the circle never fall in an unmarked cell
+		double reach = obstacle.getRadius() + inflation + 1;
+		double x = obstacle.getPosition().getX();
+		double y = obstacle.getPosition().getY();
+		int col0 = (int) Math.floor((x - reach) / cellWidth);
+		int col1 = Math.min((int) Math.floor((x + reach) / cellWidth), col0 + cols - 1);
+		int row0 = (int) Math.floor((y - reach) / cellHeight);
+		int row1 = Math.min((int) Math.floor((y + reach) / cellHeight), row0 + rows - 1);
+
+		int[] cells = new int[(col1 - col0 + 1) * (row1 - row0 + 1)];
+		int n = 0;
+		for (int r = row0; r <= row1; r++) {
+			for (int c = col0; c <= col1; c++) {
+				cells[n++] = cell(c, r);
+			}
+		}
+		return cells;
+	}
+
+	public double getInflation() {
+		return inflation;
+	}
+
+	/**
+	 * Adds every obstacle rasterized into a cell that the shortest segment from a to b
+	 * passes through
+	 */
+	public void collect(Position a, Position b, Set<AbstractObject> out) {
+		double x0 = a.getX();
+		double y0 = a.getY();
+		double dx = wrap(b.getX() - x0, width);
+		double dy = wrap(b.getY() - y0, height);
+
+		// DDA walk through the unwrapped cells, reading the wrapped ones
+		int col = (int) Math.floor(x0 / cellWidth);
+		int row = (int) Math.floor(y0 / cellHeight);
+		int endCol = (int) Math.floor((x0 + dx) / cellWidth);
+		int endRow = (int) Math.floor((y0 + dy) / cellHeight);
+		int stepCol = (dx > 0) ? 1 : -1;
+		int stepRow = (dy > 0) ? 1 : -1;
+
+		double tDeltaX = (dx == 0) ? Double.POSITIVE_INFINITY : cellWidth / Math.abs(dx);
+		double tDeltaY = (dy == 0) ? Double.POSITIVE_INFINITY : cellHeight / Math.abs(dy);
+		double nextX = (dx > 0) ? (col + 1) * cellWidth : col * cellWidth;
+		double nextY = (dy > 0) ? (row + 1) * cellHeight : row * cellHeight;
+		double tMaxX = (dx == 0) ? Double.POSITIVE_INFINITY : (nextX - x0) / dx;
+		double tMaxY = (dy == 0) ? Double.POSITIVE_INFINITY : (nextY - y0) / dy;
+
+		int steps = Math.abs(endCol - col) + Math.abs(endRow - row);
+		addCell(cell(col, row), out);
+		for (int s = 0; s < steps; s++) {
+			if (tMaxX < tMaxY) {
+				col += stepCol;
+				tMaxX += tDeltaX;
+			} else {
+				row += stepRow;
+				tMaxY += tDeltaY;
+			}
+			addCell(cell(col, row), out);
+		}
+	}
+
+	private void addCell(int c, Set<AbstractObject> out) {
+		for (int m = cellStart[c]; m < cellStart[c + 1]; m++) {
+			out.add(members[m]);
+		}
+	}
+
+	/**
+	 * Same answer as state.isPathClearOfObstructions against all of this grid's obstacles
+	 */
+	public boolean isPathClear(Toroidal2DPhysics state, Position a, Position b, int freeRadius) {
+		return isPathClear(state, a, b, freeRadius, new HashSet<AbstractObject>());
+	}
+
+	/**
+	 * Same as isPathClear, collecting the candidates into the given scratch set
+	 */
+	public boolean isPathClear(Toroidal2DPhysics state, Position a, Position b, int freeRadius,
+			Set<AbstractObject> scratch) {
+		if (freeRadius > inflation) {
+			// the grid was not inflated enough for this query
+			return state.isPathClearOfObstructions(a, b, obstacles, freeRadius);
+		}
+		scratch.clear();
+		collect(a, b, scratch);
+		return scratch.isEmpty() || state.isPathClearOfObstructions(a, b, scratch, freeRadius);
+	}
+
+	private int cell(int col, int row) {
+		return Math.floorMod(row, rows) * cols + Math.floorMod(col, cols);
+	}
+
+	static double wrap(double delta, double size) {
+		delta = delta % size;
+		if (delta >= size / 2) {
+			delta -= size;
+		} else if (delta < -size / 2) {
+			delta += size;
+		}
+		return delta;
+	}
+}
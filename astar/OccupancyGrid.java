@@ -0,0 +1,192 @@
+package stan5674.astar;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import spacesettlers.objects.AbstractObject;
+import spacesettlers.simulator.Toroidal2DPhysics;
+import spacesettlers.utilities.Position;
+
+/**
+ * Occupancy raster of the obstacles grown by a clearance, stored as two bitsets over a
+ * toroidal grid of small cells.  A cell is blocked when it lies entirely inside one grown
+ * obstacle and touched when any grown obstacle overlaps it.  A free space test is a bit
+ * lookup everywhere except in cells that are touched but not blocked, where only the
+ * obstacles overlapping that cell are tested exactly.
+ *
+ * Meant to be built once per tick: obstacles move, the raster does not follow them.
+ */
+public class OccupancyGrid {
+	public static final double defaultCellSize = 10;
+	public static final double defaultClearance = AStarSearch.fudge_factor;
+
+	private final double width, height;
+	private final int cols, rows;
+	private final double cellWidth, cellHeight;
+	private final double clearance;
+
+	/** one bit per cell, cell c is bit (c & 63) of word (c >>> 6) */
+	private final long[] blocked;
+	private final long[] touched;
+
+	// obstacles overlapping each boundary cell, cellStart[c] .. cellStart[c+1] for cell c
+	private final int[] cellStart;
+	private final AbstractObject[] members;
+
+	public OccupancyGrid(Toroidal2DPhysics state, Collection<? extends AbstractObject> obstacles) {
+		this(state, obstacles, defaultClearance, defaultCellSize);
+	}
+
+	public OccupancyGrid(Toroidal2DPhysics state, Collection<? extends AbstractObject> obstacles, double clearance,
+			double cellSize) {
+		width = state.getWidth();
+		height = state.getHeight();
+		cols = Math.max(1, (int) (width / cellSize));
+		rows = Math.max(1, (int) (height / cellSize));
+		cellWidth = width / cols;
+		cellHeight = height / rows;
+		this.clearance = clearance;
+
+		int numCells = cols * rows;
+		blocked = new long[(numCells + 63) >>> 6];
+		touched = new long[blocked.length];
+		cellStart = new int[numCells + 1];
+
+		// first pass sets the bits and counts the overlaps per cell, the second fills them in
+		AbstractObject[] list = obstacles.toArray(new AbstractObject[obstacles.size()]);
+		for (AbstractObject obstacle : list) {
+			rasterize(obstacle, null, null);
+		}
+		for (int c = 0; c < numCells; c++) {
+			cellStart[c + 1] += cellStart[c];
+		}
+		members = new AbstractObject[cellStart[numCells]];
+		int[] fill = Arrays.copyOf(cellStart, numCells);
+		for (AbstractObject obstacle : list) {
+			rasterize(obstacle, members, fill);
+		}
+	}
+
+	/**
+	 * Walks the cells of the obstacle's grown bounding box.  Without a fill array it marks the
+	 * bits and counts the overlaps, with one it records the obstacle in the boundary cells.
+	 */
+	private void rasterize(AbstractObject obstacle, AbstractObject[] out, int[] fill) {
+		double reach = obstacle.getRadius() + clearance;
+		double x = obstacle.getPosition().getX();
+		double y = obstacle.getPosition().getY();
+		int col0 = (int) Math.floor((x - reach) / cellWidth);
+		int col1 = Math.min((int) Math.floor((x + reach) / cellWidth), col0 + cols - 1);
+		int row0 = (int) Math.floor((y - reach) / cellHeight);
+		int row1 = Math.min((int) Math.floor((y + reach) / cellHeight), row0 + rows - 1);
+		double reachSq = reach * reach;
+
+		for (int r = row0; r <= row1; r++) {
+			// offsets from the centre to the nearest and farthest edges of the row, unwrapped
+			double top = r * cellHeight - y;
+			double bottom = top + cellHeight;
+			double nearY = (top > 0) ? top : (bottom < 0) ? -bottom : 0;
+			double farY = Math.max(Math.abs(top), Math.abs(bottom));
+
+			for (int c = col0; c <= col1; c++) {
+				double left = c * cellWidth - x;
+				double right = left + cellWidth;
+				double nearX = (left > 0) ? left : (right < 0) ? -right : 0;
+				double farX = Math.max(Math.abs(left), Math.abs(right));
+
+				if (nearX * nearX + nearY * nearY >= reachSq) {
+					continue; // the grown circle misses the cell
+				}
+				int cell = cell(c, r);
+				if (fill == null) {
+					touched[cell >>> 6] |= 1L << cell;
+					if (farX * farX + farY * farY < reachSq) {
+						blocked[cell >>> 6] |= 1L << cell;
+					}
+					cellStart[cell + 1]++;
+				} else {
+					out[fill[cell]++] = obstacle;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Is the position at least the clearance away from the edge of every obstacle?  Same
+	 * answer as AStarSearch.inFreeSpace when the clearance is the fudge factor.
+	 */
+	public boolean isFree(Toroidal2DPhysics state, Position position) {
+		int cell = cell((int) Math.floor(position.getX() / cellWidth), (int) Math.floor(position.getY() / cellHeight));
+		long bit = 1L << cell;
+		if ((touched[cell >>> 6] & bit) == 0) {
+			return true;
+		}
+		if ((blocked[cell >>> 6] & bit) != 0) {
+			return false;
+		}
+
+		// boundary cell, test the obstacles that overlap it exactly
+		for (int m = cellStart[cell]; m < cellStart[cell + 1]; m++) {
+			double dist = state.findShortestDistance(position, members[m].getPosition());
+			if (dist < members[m].getRadius() + clearance) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Does no grown obstacle overlap the cell at all?
+	 */
+	public boolean isCellFree(int col, int row) {
+		int cell = cell(col, row);
+		return (touched[cell >>> 6] & (1L << cell)) == 0;
+	}
+
+	/**
+	 * Is the cell entirely inside a grown obstacle?
+	 */
+	public boolean isCellBlocked(int col, int row) {
+		int cell = cell(col, row);
+		return (blocked[cell >>> 6] & (1L << cell)) != 0;
+	}
+
+	public int getCols() {
+		return cols;
+	}
+
+	public int getRows() {
+		return rows;
+	}
+
+	public double getCellWidth() {
+		return cellWidth;
+	}
+
+	public double getCellHeight() {
+		return cellHeight;
+	}
+
+	public double getClearance() {
+		return clearance;
+	}
+
+	public int columnOf(Position position) {
+		return Math.floorMod((int) Math.floor(position.getX() / cellWidth), cols);
+	}
+
+	public int rowOf(Position position) {
+		return Math.floorMod((int) Math.floor(position.getY() / cellHeight), rows);
+	}
+
+	/**
+	 * The centre of the cell, with the column and row wrapped onto the map
+	 */
+	public Position cellCenter(int col, int row) {
+		return new Position((Math.floorMod(col, cols) + 0.5) * cellWidth, (Math.floorMod(row, rows) + 0.5) * cellHeight);
+	}
+
+	private int cell(int col, int row) {
+		return Math.floorMod(row, rows) * cols + Math.floorMod(col, cols);
+	}
+}
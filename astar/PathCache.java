@@ -0,0 +1,301 @@
+package stan5674.astar;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import spacesettlers.objects.Asteroid;
+import spacesettlers.simulator.Toroidal2DPhysics;
+import spacesettlers.utilities.Position;
+
+/**
+ * Remembers planned paths by the cell the search started in and the id of the goal object.
+ * Every cell of a wrap-aware grid carries a version that is bumped whenever an asteroid's
+ * inflated footprint enters it, and an entry records the versions of the cells its path
+ * crosses.  A lookup only returns the path while none of those cells has changed.
+ *
+ * Asteroids leaving a cell never invalidate anything, since that cannot block a path.
+ */
+public class PathCache {
+	public static final double defaultCellSize = 50;
+	public static final int defaultMaxEntries = 256;
+
+	private final double width, height;
+	private final int cols, rows;
+	private final double cellWidth, cellHeight;
+	private final int[] cellVersion;
+	private final Map<Key, CachedPath> entries;
+
+	/** cells each asteroid's footprint covered at the last update */
+	private final Map<UUID, int[]> footprints;
+	private final boolean[] wasCovered;
+	private int lastUpdate;
+
+	private int hits, misses, invalidations;
+
+	/** Start cell and goal object a path was planned for */
+	private static class Key {
+		final int startCell;
+		final UUID goalId;
+
+		Key(int startCell, UUID goalId) {
+			this.startCell = startCell;
+			this.goalId = goalId;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) other;
+			return startCell == key.startCell && goalId.equals(key.goalId);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * goalId.hashCode() + startCell;
+		}
+	}
+
+	/** A cached path with the versions of the cells it crosses */
+	private static class CachedPath {
+		final Vertex[] path;
+		final int goalCell;
+		final int[] cells;
+		final int[] versions;
+
+		CachedPath(Vertex[] path, int goalCell, int[] cells, int[] versions) {
+			this.path = path;
+			this.goalCell = goalCell;
+			this.cells = cells;
+			this.versions = versions;
+		}
+	}
+
+	public PathCache(Toroidal2DPhysics state) {
+		this(state, defaultCellSize, defaultMaxEntries);
+	}
+
+	public PathCache(Toroidal2DPhysics state, double cellSize, final int maxEntries) {
+		width = state.getWidth();
+		height = state.getHeight();
+		cols = Math.max(1, (int) (width / cellSize));
+		rows = Math.max(1, (int) (height / cellSize));
+		cellWidth = width / cols;
+		cellHeight = height / rows;
+		cellVersion = new int[cols * rows];
+		wasCovered = new boolean[cols * rows];
+		footprints = new HashMap<UUID, int[]>();
+		lastUpdate = -1;
+
+		// least recently used entries are dropped once the cache is full
+		entries = new LinkedHashMap<Key, CachedPath>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, CachedPath> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Bumps the version of every cell an asteroid footprint entered since the last update.
+	 * Only the first call of each tick does any work.
+	 */
+	public void update(Toroidal2DPhysics state) {
+		if (state.getCurrentTimestep() == lastUpdate) {
+			return;
+		}
+		boolean firstUpdate = (lastUpdate < 0);
+		lastUpdate = state.getCurrentTimestep();
+
+		Map<UUID, int[]> previous = new HashMap<UUID, int[]>(footprints);
+		footprints.clear();
+		for (Asteroid asteroid : state.getAsteroids()) {
+			int[] cells = footprint(asteroid.getPosition(), asteroid.getRadius() + AStarSearch.fudge_factor);
+			footprints.put(asteroid.getId(), cells);
+			if (firstUpdate) {
+				continue;
+			}
+
+			int[] old = previous.get(asteroid.getId());
+			if (old != null) {
+				for (int c : old) {
+					wasCovered[c] = true;
+				}
+			}
+			for (int c : cells) {
+				if (!wasCovered[c]) {
+					cellVersion[c]++;
+				}
+			}
+			if (old != null) {
+				for (int c : old) {
+					wasCovered[c] = false;
+				}
+			}
+		}
+	}
+
+	/**
+	 * The path cached for this start and goal object, or null if there is none or one of the
+	 * cells it crosses has changed since
+	 * @param goalPosition where the goal object is now, a goal that left its cell is a miss
+	 */
+	public Vertex[] get(Position start, UUID goalId, Position goalPosition) {
+		Key key = new Key(cellOf(start), goalId);
+		CachedPath entry = entries.get(key);
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+
+		boolean valid = (entry.goalCell == cellOf(goalPosition));
+		for (int i = 0; valid && i < entry.cells.length; i++) {
+			valid = (cellVersion[entry.cells[i]] == entry.versions[i]);
+		}
+		if (!valid) {
+			entries.remove(key);
+			invalidations++;
+			misses++;
+			return null;
+		}
+		hits++;
+		return entry.path;
+	}
+
+	/**
+	 * Caches a path planned from start to the goal object
+	 */
+	public void put(Position start, UUID goalId, Vertex[] path) {
+		if (path == null || path.length == 0) {
+			return;
+		}
+
+		boolean[] crossed = new boolean[cols * rows];
+		int count = 0;
+		crossed[cellOf(path[0].getPosition())] = true;
+		count++;
+		for (int v = 1; v < path.length; v++) {
+			count += walk(path[v - 1].getPosition(), path[v].getPosition(), crossed);
+		}
+
+		int[] cells = new int[count];
+		int[] versions = new int[count];
+		for (int c = 0, n = 0; c < crossed.length; c++) {
+			if (crossed[c]) {
+				cells[n] = c;
+				versions[n++] = cellVersion[c];
+			}
+		}
+		Position goalPosition = path[path.length - 1].getPosition();
+		entries.put(new Key(cellOf(start), goalId), new CachedPath(path, cellOf(goalPosition), cells, versions));
+	}
+
+	public void clear() {
+		entries.clear();
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public int getHits() {
+		return hits;
+	}
+
+	public int getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Lookups that found an entry but dropped it because a cell it crosses changed.  These
+	 * are counted as misses too.
+	 */
+	public int getInvalidations() {
+		return invalidations;
+	}
+
+	public void resetCounters() {
+		hits = 0;
+		misses = 0;
+		invalidations = 0;
+	}
+
+	/**
+	 * Marks the cells the shortest segment from a to b passes through (a DDA walk) and
+	 * returns how many of them were not marked yet
+	 */
+	private int walk(Position a, Position b, boolean[] crossed) {
+		double x0 = a.getX();
+		double y0 = a.getY();
+		double dx = ObstacleGrid.wrap(b.getX() - x0, width);
+		double dy = ObstacleGrid.wrap(b.getY() - y0, height);
+
+		int col = (int) Math.floor(x0 / cellWidth);
+		int row = (int) Math.floor(y0 / cellHeight);
+		int endCol = (int) Math.floor((x0 + dx) / cellWidth);
+		int endRow = (int) Math.floor((y0 + dy) / cellHeight);
+		int stepCol = (dx > 0) ? 1 : -1;
+		int stepRow = (dy > 0) ? 1 : -1;
+
+		double tDeltaX = (dx == 0) ? Double.POSITIVE_INFINITY : cellWidth / Math.abs(dx);
+		double tDeltaY = (dy == 0) ? Double.POSITIVE_INFINITY : cellHeight / Math.abs(dy);
+		double nextX = (dx > 0) ? (col + 1) * cellWidth : col * cellWidth;
+		double nextY = (dy > 0) ? (row + 1) * cellHeight : row * cellHeight;
+		double tMaxX = (dx == 0) ? Double.POSITIVE_INFINITY : (nextX - x0) / dx;
+		double tMaxY = (dy == 0) ? Double.POSITIVE_INFINITY : (nextY - y0) / dy;
+
+		int added = mark(cell(col, row), crossed);
+		int steps = Math.abs(endCol - col) + Math.abs(endRow - row);
+		for (int s = 0; s < steps; s++) {
+			if (tMaxX < tMaxY) {
+				col += stepCol;
+				tMaxX += tDeltaX;
+			} else {
+				row += stepRow;
+				tMaxY += tDeltaY;
+			}
+			added += mark(cell(col, row), crossed);
+		}
+		return added;
+	}
+
+	private int mark(int c, boolean[] crossed) {
+		if (crossed[c]) {
+			return 0;
+		}
+		crossed[c] = true;
+		return 1;
+	}
+
+	/**
+	 * The wrapped cells covered by the bounding box of a circle, without repeats
+	 */
+	private int[] footprint(Position center, double reach) {
+		int col0 = (int) Math.floor((center.getX() - reach) / cellWidth);
+		int col1 = Math.min((int) Math.floor((center.getX() + reach) / cellWidth), col0 + cols - 1);
+		int row0 = (int) Math.floor((center.getY() - reach) / cellHeight);
+		int row1 = Math.min((int) Math.floor((center.getY() + reach) / cellHeight), row0 + rows - 1);
+
+		int[] cells = new int[(col1 - col0 + 1) * (row1 - row0 + 1)];
+		int n = 0;
+		for (int r = row0; r <= row1; r++) {
+			for (int c = col0; c <= col1; c++) {
+				cells[n++] = cell(c, r);
+			}
+		}
+		return cells;
+	}
+
+	private int cellOf(Position position) {
+		return cell((int) Math.floor(position.getX() / cellWidth), (int) Math.floor(position.getY() / cellHeight));
+	}
+
+	private int cell(int col, int row) {
+		return Math.floorMod(row, rows) * cols + Math.floorMod(col, cols);
+	}
+}
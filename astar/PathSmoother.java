@@ -0,0 +1,106 @@
+package stan5674.astar;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import spacesettlers.objects.AbstractObject;
+import spacesettlers.simulator.Toroidal2DPhysics;
+import spacesettlers.utilities.Position;
+
+/**
+ * Post-processing for planned paths.  Paths over a sampled roadmap zig-zag between random
+ * vertices, and every waypoint costs the ship a separate move.  Shortcutting keeps the start
+ * and from each kept waypoint jumps to the farthest later one it can see in a straight line,
+ * so the path never gets longer and the waypoints left are the ones the path has to bend at.
+ *
+ * The scratch set is reused between calls.  Not thread safe.
+ */
+public class PathSmoother {
+	private final Set<AbstractObject> scratch;
+	private int lastRemoved;
+
+	public PathSmoother() {
+		scratch = new HashSet<AbstractObject>();
+	}
+
+	/**
+	 * Shortcuts with the same clearance the roadmap's edges keep
+	 */
+	public Vertex[] shortcut(Toroidal2DPhysics state, Vertex[] path, ObstacleGrid grid, Position goalPosition) {
+		return shortcut(state, path, grid, AStarSearch.fudge_factor, goalPosition);
+	}
+
+	/**
+	 * Greedily removes the waypoints whose neighbours are joined by a clear line
+	 * @param grid broadphase over the obstacles, inflated by at least freeRadius
+	 * @param goalPosition an obstacle at this position is the goal and does not block the line
+	 * @return the shortened path, or the same array if no waypoint could be removed
+	 */
+	public Vertex[] shortcut(Toroidal2DPhysics state, Vertex[] path, ObstacleGrid grid, int freeRadius,
+			Position goalPosition) {
+		lastRemoved = 0;
+		if (path == null || path.length < 3) {
+			return path;
+		}
+
+		int[] kept = new int[path.length];
+		int numKept = 0;
+		kept[numKept++] = 0;
+		int current = 0;
+		while (current < path.length - 1) {
+			// farthest visible first, the next waypoint is always reachable
+			int next = current + 1;
+			for (int j = path.length - 1; j > current + 1; j--) {
+				if (isClear(state, path[current].getPosition(), path[j].getPosition(), grid, freeRadius, goalPosition)) {
+					next = j;
+					break;
+				}
+			}
+			kept[numKept++] = next;
+			current = next;
+		}
+
+		lastRemoved = path.length - numKept;
+		if (lastRemoved == 0) {
+			return path;
+		}
+		Vertex[] shortened = new Vertex[numKept];
+		for (int k = 0; k < numKept; k++) {
+			shortened[k] = path[kept[k]];
+		}
+		return shortened;
+	}
+
+	/**
+	 * Number of waypoints the last shortcut removed
+	 */
+	public int getLastRemoved() {
+		return lastRemoved;
+	}
+
+	/**
+	 * Is the line clear with the same clearance the roadmap's edges keep?
+	 */
+	public boolean isClear(Toroidal2DPhysics state, Position a, Position b, ObstacleGrid grid, Position goalPosition) {
+		return isClear(state, a, b, grid, AStarSearch.fudge_factor, goalPosition);
+	}
+
+	/**
+	 * Is the line clear of every obstacle but the goal?
+	 */
+	public boolean isClear(Toroidal2DPhysics state, Position a, Position b, ObstacleGrid grid, int freeRadius,
+			Position goalPosition) {
+		if (freeRadius > grid.getInflation()) {
+			return false; // the broadphase would miss obstacles, keep the waypoint
+		}
+		scratch.clear();
+		grid.collect(a, b, scratch);
+		for (Iterator<AbstractObject> it = scratch.iterator(); it.hasNext();) {
+			if (it.next().getPosition().equals(goalPosition)) {
+				it.remove();
+			}
+		}
+		return scratch.isEmpty() || state.isPathClearOfObstructions(a, b, scratch, freeRadius);
+	}
+}
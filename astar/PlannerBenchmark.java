@@ -0,0 +1,110 @@
+package stan5674.astar;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import spacesettlers.objects.Asteroid;
+import spacesettlers.objects.Ship;
+import spacesettlers.simulator.Toroidal2DPhysics;
+import spacesettlers.utilities.Position;
+
+/**
+ * Compares the random roadmap planner with jump point search on the same world: for each
+ * goal both plan from the ship's position, and the latency and the length of the paths both
+ * found are summed up.  Lengths include the clearance of the grid cells, so they are only
+ * comparable between the two planners, not with straight line distances.
+ *
+ * Runs standalone on a generated world, outside the agent:
+ * java stan5674.astar.PlannerBenchmark [seed] [asteroids]
+ */
+public class PlannerBenchmark {
+	private int queries;
+	private int roadmapFound, gridFound, bothFound;
+	private long roadmapNanos, gridNanos;
+	private double roadmapLength, gridLength;
+
+	/**
+	 * Plans from the ship to every goal with both planners
+	 */
+	public void run(Toroidal2DPhysics state, Ship ship, List<Position> goals, Random random) {
+		JumpPointSearch search = new JumpPointSearch();
+		for (Position goal : goals) {
+			long start = System.nanoTime();
+			Graph graph = AStarSearch.createGraphToGoalWithBeacons(state, ship, goal, random);
+			Vertex[] roadmapPath = graph.findAStarPath(state);
+			roadmapNanos += System.nanoTime() - start;
+
+			start = System.nanoTime();
+			Vertex[] gridPath = AStarSearch.createJumpPointPath(search, state, ship, goal);
+			gridNanos += System.nanoTime() - start;
+
+			queries++;
+			if (roadmapPath != null) {
+				roadmapFound++;
+			}
+			if (gridPath != null) {
+				gridFound++;
+			}
+			if (roadmapPath != null && gridPath != null) {
+				bothFound++;
+				roadmapLength += length(state, roadmapPath);
+				gridLength += length(state, gridPath);
+			}
+		}
+	}
+
+	/**
+	 * Total toroidal length of the path
+	 */
+	static double length(Toroidal2DPhysics state, Vertex[] path) {
+		double length = 0;
+		for (int v = 1; v < path.length; v++) {
+			length += state.findShortestDistance(path[v - 1].getPosition(), path[v].getPosition());
+		}
+		return length;
+	}
+
+	public int getQueries() {
+		return queries;
+	}
+
+	/**
+	 * One line summary: paths found, mean latency and mean length over the goals both reached
+	 */
+	public String summary() {
+		return String.format("%d queries | roadmap: %d found, %.2f ms, length %.1f | jump point: %d found, %.2f ms, length %.1f",
+				queries,
+				roadmapFound, roadmapNanos / 1e6 / Math.max(1, queries), roadmapLength / Math.max(1, bothFound),
+				gridFound, gridNanos / 1e6 / Math.max(1, queries), gridLength / Math.max(1, bothFound));
+	}
+
+	/**
+	 * Benchmarks both planners from one ship to every minable asteroid of a random world
+	 */
+	public static void main(String[] args) {
+		long seed = (args.length > 0) ? Long.parseLong(args[0]) : 0;
+		int numAsteroids = (args.length > 1) ? Integer.parseInt(args[1]) : 60;
+		Random random = new Random(seed);
+
+		Toroidal2DPhysics state = new Toroidal2DPhysics(1080, 1600, 1.0 / 40);
+		List<Position> goals = new ArrayList<Position>();
+		for (int a = 0; a < numAsteroids; a++) {
+			int radius = 5 + random.nextInt(25);
+			boolean mineable = random.nextBoolean();
+			Asteroid asteroid = new Asteroid(state.getRandomFreeLocation(random, 2 * radius), mineable, radius,
+					false, 1.0 / 3, 1.0 / 3, 1.0 / 3);
+			state.addObject(asteroid);
+			if (mineable) {
+				goals.add(asteroid.getPosition());
+			}
+		}
+		Ship ship = new Ship("benchmark", Color.WHITE, state.getRandomFreeLocation(random, 40));
+		state.addObject(ship);
+
+		PlannerBenchmark planners = new PlannerBenchmark();
+		planners.run(state, ship, goals, new Random(seed));
+		System.out.println(planners.summary());
+	}
+}
@@ -0,0 +1,17 @@
+package stan5674.astar;
+
+/**
+ * Switch for the debug graphics.  Graphics objects are only created when something
+ * asks for them, and never while rendering is off (e.g. headless ladder runs).
+ */
+public class Rendering {
+	private static volatile boolean enabled = true;
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	public static void setEnabled(boolean enabled) {
+		Rendering.enabled = enabled;
+	}
+}
@@ -0,0 +1,514 @@
+package stan5674.astar;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import spacesettlers.objects.AbstractObject;
+import spacesettlers.objects.Base;
+import spacesettlers.objects.Ship;
+import spacesettlers.simulator.Toroidal2DPhysics;
+import spacesettlers.utilities.Position;
+import spacesettlers.utilities.Vector2D;
+
+/**
+ * A probabilistic roadmap that survives across ticks.  The sampled vertices stay in
+ * place for the whole game and only the vertices and edges near obstacles that moved,
+ * spawned or disappeared since the last update get their clearance re-checked.
+ *
+ * The roadmap keeps one graph over its vertices and active edges for the whole game.
+ * Start and goal are attached to it as temporary vertices for a single search and must be
+ * detached again once the search is done.
+ */
+public class Roadmap {
+	/**
+	 * How far an obstacle may drift before the edges around it are re-checked.  Clearance
+	 * is tested with this much extra margin so drifting within it never invalidates a clear edge.
+	 */
+	static final double driftTolerance = 10;
+
+	private final double width, height;
+	private final double clearance;
+
+	/** the persistent vertices and whether they are currently outside every obstacle */
+	private final Vertex[] vertices;
+	private final boolean[] vertexFree;
+	private final int numSampledVertices;
+	private final VertexBuckets buckets;
+	private final int[] candidates;
+	private final int[] attached;
+
+	/** every vertex pair close enough to ever become an edge */
+	private final int[] pairA, pairB;
+	private final double[] pairLength;
+	private final Edge[] pairEdge;
+	private final boolean[] pairClear;
+	private final boolean[] pairActive;
+	private final int numPairs;
+
+	/** obstacle positions the current clearance was computed against */
+	private final Map<UUID, Anchor> anchors;
+
+	/** edges that changed state in the last update */
+	private final List<Edge> changedEdges;
+
+	/** the graph searches run on, with the temporary start and goal of the last attach */
+	private final Graph graph;
+	private int roadmapEdges;
+
+	/** temporary start and goal edges from the last attach */
+	private final List<Edge> temporaryEdges;
+
+	/** broadphase over this tick's obstacles, shared by every attach of the tick */
+	private ObstacleGrid attachGrid;
+	private final Set<AbstractObject> scratch;
+
+	private int lastUpdate;
+	private int lastRechecked;
+	private int updates;
+
+	/** An obstacle position recorded when its clearance was last evaluated */
+	private static class Anchor {
+		double x, y, radius;
+
+		Anchor(AbstractObject obstacle) {
+			x = obstacle.getPosition().getX();
+			y = obstacle.getPosition().getY();
+			radius = obstacle.getRadius();
+		}
+	}
+
+	/**
+	 * Samples the roadmap vertices in the current free space and finds the candidate pairs.
+	 * Clearance is evaluated on the first update.
+	 */
+	public Roadmap(Toroidal2DPhysics state, Random random) {
+		width = state.getWidth();
+		height = state.getHeight();
+		clearance = AStarSearch.fudge_factor + driftTolerance;
+
+		// the sampler may place fewer than numGraphNodes vertices in a dense field
+		FreeSpaceSampler sampler = AStarSearch.sampleFreeSpace(state, random);
+		List<Position> sampled = sampler.getPositions();
+		numSampledVertices = sampler.getPlaced();
+		vertices = new Vertex[sampled.size()];
+		for (int v = 0; v < vertices.length; v++) {
+			vertices[v] = new Vertex(sampled.get(v));
+		}
+		vertexFree = new boolean[vertices.length];
+
+		// only vertices in neighbouring cells can be close enough to pair up
+		buckets = new VertexBuckets(state, AStarSearch.positionsOf(vertices), AStarSearch.maxNodeDistance);
+		candidates = new int[vertices.length];
+		attached = new int[vertices.length];
+		List<int[]> pairs = new ArrayList<int[]>();
+		List<Double> lengths = new ArrayList<Double>();
+		for (int i = 0; i < vertices.length; i++) {
+			int numCandidates = buckets.candidates(vertices[i].getPosition(), candidates);
+			for (int c = 0; c < numCandidates; c++) {
+				int j = candidates[c];
+				if (j <= i) {
+					continue;
+				}
+				double distance = state.findShortestDistance(vertices[i].getPosition(), vertices[j].getPosition());
+				if (distance > 0 && distance < AStarSearch.maxNodeDistance) {
+					pairs.add(new int[] {i, j});
+					lengths.add(distance);
+				}
+			}
+		}
+		numPairs = pairs.size();
+		pairA = new int[numPairs];
+		pairB = new int[numPairs];
+		pairLength = new double[numPairs];
+		for (int p = 0; p < numPairs; p++) {
+			pairA[p] = pairs.get(p)[0];
+			pairB[p] = pairs.get(p)[1];
+			pairLength[p] = lengths.get(p);
+		}
+		pairEdge = new Edge[numPairs];
+		pairClear = new boolean[numPairs];
+		pairActive = new boolean[numPairs];
+
+		anchors = new HashMap<UUID, Anchor>();
+		changedEdges = new ArrayList<Edge>();
+		temporaryEdges = new ArrayList<Edge>();
+		graph = new Graph();
+		for (Vertex vertex : vertices) {
+			graph.addVertex(vertex);
+		}
+		graph.setNumSampledVertices(numSampledVertices);
+		scratch = new HashSet<AbstractObject>();
+		lastUpdate = -1;
+	}
+
+	/**
+	 * Brings the roadmap's clearance up to date with the obstacles in space.  Only the first
+	 * call of each tick does any work.
+	 */
+	public void update(Toroidal2DPhysics state, Ship myShip) {
+		update(state, myShip.getTeamName());
+	}
+
+	/**
+	 * Same as update(state, ship) for a whole team, so one roadmap can serve every ship
+	 */
+	public void update(Toroidal2DPhysics state, String teamName) {
+		if (state.getCurrentTimestep() == lastUpdate) {
+			return;
+		}
+		boolean firstUpdate = (lastUpdate < 0);
+		lastUpdate = state.getCurrentTimestep();
+		updates++;
+		detach();
+		changedEdges.clear();
+		lastRechecked = 0;
+
+		// collect the obstacles that moved, spawned or disappeared since their anchor was set
+		List<AbstractObject> obstacles = getObstacles(state, teamName);
+		attachGrid = new ObstacleGrid(state, obstacles, AStarSearch.fudge_factor);
+		List<Anchor> dirty = new ArrayList<Anchor>();
+		Set<UUID> seen = new HashSet<UUID>();
+		for (AbstractObject obstacle : obstacles) {
+			seen.add(obstacle.getId());
+			Anchor anchor = anchors.get(obstacle.getId());
+			if (anchor == null) {
+				anchor = new Anchor(obstacle);
+				anchors.put(obstacle.getId(), anchor);
+				dirty.add(anchor);
+			} else if (anchor.radius != obstacle.getRadius()
+					|| distance(anchor.x, anchor.y, obstacle.getPosition().getX(), obstacle.getPosition().getY()) > driftTolerance) {
+				dirty.add(anchor);
+				anchor = new Anchor(obstacle);
+				anchors.put(obstacle.getId(), anchor);
+				dirty.add(anchor);
+			}
+		}
+		for (Iterator<Map.Entry<UUID, Anchor>> it = anchors.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<UUID, Anchor> entry = it.next();
+			if (!seen.contains(entry.getKey())) {
+				dirty.add(entry.getValue());
+				it.remove();
+			}
+		}
+
+		if (!firstUpdate && dirty.isEmpty()) {
+			return;
+		}
+
+		// re-check only the vertices and pairs near a dirty obstacle
+		boolean[] vertexChanged = new boolean[vertices.length];
+		for (int v = 0; v < vertices.length; v++) {
+			if (firstUpdate || nearAny(vertices[v].getPosition(), dirty)) {
+				boolean free = isVertexClear(vertices[v].getPosition());
+				vertexChanged[v] = (free != vertexFree[v]) || firstUpdate;
+				vertexFree[v] = free;
+			}
+		}
+
+		for (int p = 0; p < numPairs; p++) {
+			Position a = vertices[pairA[p]].getPosition();
+			Position b = vertices[pairB[p]].getPosition();
+
+			if (firstUpdate || segmentNearAny(a, b, dirty)) {
+				pairClear[p] = isSegmentClear(a, b);
+				lastRechecked++;
+			} else if (!vertexChanged[pairA[p]] && !vertexChanged[pairB[p]]) {
+				continue;
+			}
+			setActive(state, p, pairClear[p] && vertexFree[pairA[p]] && vertexFree[pairB[p]]);
+		}
+	}
+
+	/**
+	 * Attaches a temporary start at the ship and a temporary goal at the goal position and
+	 * returns the graph to search.  Call detach() once the search is done.
+	 *
+	 * The graph is the roadmap's own, so the cost is the start and goal connections alone.
+	 * Vertices inside obstacles stay in it but have no active edges, so searches never reach them.
+	 *
+	 * The roadmap itself is only brought up to date once per tick, so attaching for every
+	 * ship of a fleet costs the same per ship no matter how many ships there are.
+	 */
+	public Graph attach(Toroidal2DPhysics state, Ship myShip, Position goalPosition) {
+		detach();
+		update(state, myShip);
+
+		roadmapEdges = graph.getEdges().size();
+		Vertex startVertex = new Vertex(myShip.getPosition());
+		startVertex.setStart();
+		Vertex goal = new Vertex(goalPosition);
+		goal.setGoal();
+
+		connectTemporary(state, startVertex, goalPosition);
+		connectTemporary(state, goal, goalPosition);
+
+		if (canConnect(state, startVertex.getPosition(), goal.getPosition(), goalPosition)) {
+			Edge edge = new Edge(startVertex, goal,
+					state.findShortestDistanceVector(startVertex.getPosition(), goal.getPosition()));
+			graph.addEdge(edge);
+			temporaryEdges.add(edge);
+		}
+
+		graph.addVertex(startVertex);
+		graph.addVertex(goal);
+		return graph;
+	}
+
+	/**
+	 * Removes the temporary start and goal of the last attach from the roadmap, along with any landmark bounds set for them
+	 */
+	public void detach() {
+		for (Edge edge : temporaryEdges) {
+			edge.getVertex1().removeEdge(edge);
+			edge.getVertex2().removeEdge(edge);
+		}
+		temporaryEdges.clear();
+		if (graph.getVertices().size() > vertices.length) {
+			graph.truncate(vertices.length, roadmapEdges);
+		}
+		graph.setLandmarks(null); //bounds were for this start and goal only
+	}
+
+	/**
+	 * Edges that were added to or removed from the roadmap by the last update
+	 */
+	public List<Edge> getChangedEdges() {
+		return changedEdges;
+	}
+
+	/**
+	 * Number of candidate pairs whose clearance was re-checked by the last update
+	 */
+	public int getLastRechecked() {
+		return lastRechecked;
+	}
+
+	/**
+	 * Broadphase over this tick's obstacles, inflated by the fudge factor.  Built by update.
+	 */
+	public ObstacleGrid getObstacleGrid() {
+		return attachGrid;
+	}
+
+	public Vertex[] getVertices() {
+		return vertices;
+	}
+
+	/**
+	 * Number of free space vertices the sampler actually placed, out of numGraphNodes
+	 */
+	public int getNumSampledVertices() {
+		return numSampledVertices;
+	}
+
+	/**
+	 * Number of updates that did any work, one per tick at most.  getChangedEdges only covers
+	 * the last of them, so a caller that skipped one has to start over.
+	 */
+	public int getUpdates() {
+		return updates;
+	}
+
+	/**
+	 * Number of vertex pairs close enough to ever become an edge
+	 */
+	int getNumPairs() {
+		return numPairs;
+	}
+
+	/**
+	 * The two vertices of a candidate pair, as indices into getVertices
+	 */
+	int getPairA(int p) {
+		return pairA[p];
+	}
+
+	int getPairB(int p) {
+		return pairB[p];
+	}
+
+	/**
+	 * Length of the edge the pair becomes when it is clear
+	 */
+	double getPairLength(int p) {
+		return pairLength[p];
+	}
+
+	/**
+	 * The obstacles for the roadmap: every asteroid plus the other teams' bases
+	 */
+	private List<AbstractObject> getObstacles(Toroidal2DPhysics state, String teamName) {
+		List<AbstractObject> obstacles = new ArrayList<AbstractObject>(state.getAsteroids());
+		for (Base base : state.getBases()) {
+			if (!base.getTeamName().equalsIgnoreCase(teamName)) {
+				obstacles.add(base);
+			}
+		}
+		return obstacles;
+	}
+
+	/**
+	 * Connects a temporary vertex to every free roadmap vertex it can reach directly
+	 */
+	private void connectTemporary(Toroidal2DPhysics state, Vertex temporary, Position goalPosition) {
+		int numAttached = attachmentsOf(state, temporary.getPosition(), goalPosition, attached);
+		for (int a = 0; a < numAttached; a++) {
+			Vertex vertex = vertices[attached[a]];
+			Vector2D lineVec = state.findShortestDistanceVector(temporary.getPosition(), vertex.getPosition());
+			Edge edge = new Edge(temporary, vertex, lineVec);
+			graph.addEdge(edge);
+			temporaryEdges.add(edge);
+		}
+	}
+
+	/**
+	 * Finds the free roadmap vertices a temporary vertex at the position would be connected
+	 * to by attach, without connecting anything.  Only valid after this tick's update.
+	 * @param out receives the vertex indices, at least getVertices().length long
+	 * @return the number of indices written
+	 */
+	public int attachmentsOf(Toroidal2DPhysics state, Position position, Position goalPosition, int[] out) {
+		int numAttached = 0;
+		int numCandidates = buckets.candidates(position, candidates);
+		for (int c = 0; c < numCandidates; c++) {
+			int v = candidates[c];
+			if (vertexFree[v] && canConnect(state, position, vertices[v].getPosition(), goalPosition)) {
+				out[numAttached++] = v;
+			}
+		}
+		return numAttached;
+	}
+
+	/**
+	 * Would attach join the two positions with an edge?  They must be close enough and the
+	 * segment clear of this tick's obstacles, not counting the goal.
+	 */
+	public boolean canConnect(Toroidal2DPhysics state, Position a, Position b, Position goalPosition) {
+		double distance = state.findShortestDistance(a, b);
+		return distance > 0 && distance < AStarSearch.maxNodeDistance && isTemporaryClear(state, a, b, goalPosition);
+	}
+
+	/**
+	 * Is the segment clear of this tick's obstacles, not counting the goal itself?  Same
+	 * answer as a fresh build that leaves the goal out of its obstacle set.
+	 */
+	private boolean isTemporaryClear(Toroidal2DPhysics state, Position a, Position b, Position goalPosition) {
+		scratch.clear();
+		attachGrid.collect(a, b, scratch);
+		for (Iterator<AbstractObject> it = scratch.iterator(); it.hasNext();) {
+			if (it.next().getPosition().equals(goalPosition)) {
+				it.remove();
+			}
+		}
+		return scratch.isEmpty() || state.isPathClearOfObstructions(a, b, scratch, AStarSearch.fudge_factor);
+	}
+
+	/**
+	 * Adds or removes a pair's edge from its vertices
+	 */
+	private void setActive(Toroidal2DPhysics state, int p, boolean active) {
+		if (active == pairActive[p]) {
+			return;
+		}
+		pairActive[p] = active;
+		Vertex a = vertices[pairA[p]];
+		Vertex b = vertices[pairB[p]];
+
+		if (active) {
+			if (pairEdge[p] == null) {
+				// the constructor attaches the edge to both vertices
+				pairEdge[p] = new Edge(a, b, state.findShortestDistanceVector(a.getPosition(), b.getPosition()));
+			} else {
+				a.addEdge(pairEdge[p]);
+				b.addEdge(pairEdge[p]);
+			}
+			graph.addEdge(pairEdge[p]);
+		} else {
+			a.removeEdge(pairEdge[p]);
+			b.removeEdge(pairEdge[p]);
+			graph.removeEdge(pairEdge[p]);
+		}
+		changedEdges.add(pairEdge[p]);
+	}
+
+	private boolean isVertexClear(Position position) {
+		for (Anchor anchor : anchors.values()) {
+			if (distance(position.getX(), position.getY(), anchor.x, anchor.y) < anchor.radius + clearance) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean isSegmentClear(Position a, Position b) {
+		for (Anchor anchor : anchors.values()) {
+			if (segmentDistance(a, b, anchor.x, anchor.y) < anchor.radius + clearance) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean nearAny(Position position, List<Anchor> dirty) {
+		for (Anchor anchor : dirty) {
+			if (distance(position.getX(), position.getY(), anchor.x, anchor.y) < anchor.radius + clearance) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean segmentNearAny(Position a, Position b, List<Anchor> dirty) {
+		for (Anchor anchor : dirty) {
+			if (segmentDistance(a, b, anchor.x, anchor.y) < anchor.radius + clearance) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Toroidal distance between two points
+	 */
+	private double distance(double x1, double y1, double x2, double y2) {
+		double dx = wrap(x2 - x1, width);
+		double dy = wrap(y2 - y1, height);
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+
+	/**
+	 * Toroidal distance from a point to the shortest segment between a and b
+	 */
+	private double segmentDistance(Position a, Position b, double x, double y) {
+		double sx = wrap(b.getX() - a.getX(), width);
+		double sy = wrap(b.getY() - a.getY(), height);
+		double px = wrap(x - a.getX(), width);
+		double py = wrap(y - a.getY(), height);
+
+		double lengthSq = sx * sx + sy * sy;
+		double t = (lengthSq == 0) ? 0 : Math.max(0, Math.min(1, (px * sx + py * sy) / lengthSq));
+		double dx = px - t * sx;
+		double dy = py - t * sy;
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+
+	/**
+	 * Wraps a coordinate difference into [-size/2, size/2)
+	 */
+	private static double wrap(double delta, double size) {
+		delta = delta % size;
+		if (delta >= size / 2) {
+			delta -= size;
+		} else if (delta < -size / 2) {
+			delta += size;
+		}
+		return delta;
+	}
+}
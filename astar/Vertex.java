@@ -16,15 +16,16 @@ public class Vertex {
 	private double heuristicCostToGoal, pathCost, F;
 	private boolean expanded;
 	private Vector <Edge> edges;
+	private int index;
 	
 	public Vertex(Position location) {
 		this.location = location;
-		graphic = new CircleGraphics(2, Color.WHITE, location);
 		expanded = false;
 		isGoal = false;
 		isStart = false;
 		isSolution = false;
 		edges = new Vector<Edge>();
+		index = -1;
 	}
 	
 	public boolean isConnectedTo(Vertex v) {
@@ -40,7 +41,23 @@ public class Vertex {
 		return false;
 	}
 	
+	/**
+	 * The graphic is created on first request, and not at all while rendering is off
+	 */
 	public SpacewarGraphics getGraphic() {
+		if (!Rendering.isEnabled()) {
+			return null;
+		}
+		if (graphic == null) {
+			graphic = new CircleGraphics(2, Color.WHITE, location);
+		}
+		if (isSolution || isStart) {
+			graphic.setColor(Color.YELLOW);
+		} else if (isGoal) {
+			graphic.setColor(Color.BLUE);
+		} else {
+			graphic.setColor(Color.WHITE);
+		}
 		return graphic;
 	}
 	
@@ -50,17 +67,18 @@ public class Vertex {
 	
 	public void setStart() {
 		isStart = true;
-		graphic.setColor(Color.YELLOW);
 	}
 	
 	public void setGoal() {
 		isGoal = true;
-		graphic.setColor(Color.BLUE);
 	}
 	
 	public void setSolution() {
 		isSolution = true;
-		graphic.setColor(Color.YELLOW);
+	}
+
+	public void clearSolution() {
+		isSolution = false;
 	}
 
 	public boolean isSolution() {
@@ -87,10 +105,43 @@ public class Vertex {
 		return (Edge[]) edges.toArray(new Edge[edges.size()]);
 	}
 	
+	/**
+	 * Number of edges, for walking them without copying the list
+	 */
+	public int getEdgeCount() {
+		return edges.size();
+	}
+
+	public Edge getEdge(int e) {
+		return edges.get(e);
+	}
+
+	/**
+	 * The other end of an edge touching this vertex
+	 */
+	public Vertex getNeighbor(Edge edge) {
+		return (edge.getVertex1() == this) ? edge.getVertex2() : edge.getVertex1();
+	}
+
+	/**
+	 * Position of this vertex in the graph it was last added to
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	void setIndex(int index) {
+		this.index = index;
+	}
+
 	public void addEdge(Edge edge) {
 		edges.add(edge);
 	}
 
+	public void removeEdge(Edge edge) {
+		edges.remove(edge);
+	}
+
 	public double getHeuristicCostToGoal() {
 		return heuristicCostToGoal;
 	}
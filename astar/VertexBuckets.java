@@ -0,0 +1,81 @@
+package stan5674.astar;
+
+import java.util.Arrays;
+
+import spacesettlers.simulator.Toroidal2DPhysics;
+import spacesettlers.utilities.Position;
+
+/**
+ * Buckets vertex positions into wrap-aware cells at least as wide as the maximum edge
+ * length, so the only vertices that can be within that distance of a point are the
+ * ones in its own cell and the eight cells around it.
+ */
+class VertexBuckets {
+	private final int cols, rows;
+	private final double cellWidth, cellHeight;
+
+	// vertex indices sorted by cell, cellStart[c] .. cellStart[c+1] are the vertices of cell c
+	private final int[] cellStart;
+	private final int[] members;
+
+	VertexBuckets(Toroidal2DPhysics state, Position[] positions, double cellSize) {
+		cols = Math.max(1, (int) (state.getWidth() / cellSize));
+		rows = Math.max(1, (int) (state.getHeight() / cellSize));
+		cellWidth = (double) state.getWidth() / cols;
+		cellHeight = (double) state.getHeight() / rows;
+
+		int[] cellOf = new int[positions.length];
+		cellStart = new int[cols * rows + 1];
+		for (int v = 0; v < positions.length; v++) {
+			cellOf[v] = cell(column(positions[v].getX()), row(positions[v].getY()));
+			cellStart[cellOf[v] + 1]++;
+		}
+		for (int c = 0; c < cols * rows; c++) {
+			cellStart[c + 1] += cellStart[c];
+		}
+		members = new int[positions.length];
+		int[] fill = Arrays.copyOf(cellStart, cols * rows);
+		for (int v = 0; v < positions.length; v++) {
+			members[fill[cellOf[v]]++] = v;
+		}
+	}
+
+	/**
+	 * Fills out with the indices of every vertex in the 3x3 cells around the position, in
+	 * ascending order, and returns how many there are.  out must hold every vertex.
+	 */
+	int candidates(Position position, int[] out) {
+		int cx = column(position.getX());
+		int cy = row(position.getY());
+		int count = 0;
+
+		// on narrow grids the wrapped neighbours repeat, so skip offsets already seen
+		for (int dy = -1; dy <= 1; dy++) {
+			if (dy > -1 && Math.floorMod(cy + dy, rows) == Math.floorMod(cy - 1, rows)) continue;
+			if (dy == 1 && Math.floorMod(cy + 1, rows) == cy) continue;
+			for (int dx = -1; dx <= 1; dx++) {
+				if (dx > -1 && Math.floorMod(cx + dx, cols) == Math.floorMod(cx - 1, cols)) continue;
+				if (dx == 1 && Math.floorMod(cx + 1, cols) == cx) continue;
+
+				int c = cell(cx + dx, cy + dy);
+				for (int m = cellStart[c]; m < cellStart[c + 1]; m++) {
+					out[count++] = members[m];
+				}
+			}
+		}
+		Arrays.sort(out, 0, count);
+		return count;
+	}
+
+	private int column(double x) {
+		return Math.floorMod((int) Math.floor(x / cellWidth), cols);
+	}
+
+	private int row(double y) {
+		return Math.floorMod((int) Math.floor(y / cellHeight), rows);
+	}
+
+	private int cell(int col, int row) {
+		return Math.floorMod(row, rows) * cols + Math.floorMod(col, cols);
+	}
+}